@@ -17,6 +17,8 @@ public class Architect {
     private RedisCredentials redisCredentials;
     private DatabaseCredentials databaseCredentials;
     private boolean isReceiver = true;
+    private boolean asyncWarmUp = false;
+    private boolean warmRestart = true;
     private final List<Class<? extends IdentifiableEntity>> entityClasses = new ArrayList<>();
     private final AtomicBoolean started = new AtomicBoolean(false);
 
@@ -28,6 +30,26 @@ public class Architect {
         return this;
     }
 
+    /**
+     * Lets cached repositories load their tables in the background instead of blocking their
+     * first use; see {@link sh.fyz.architect.cache.RedisQueueActionPool#setAsyncWarmUp}.
+     */
+    public Architect setAsyncWarmUp(boolean asyncWarmUp) {
+        this.asyncWarmUp = asyncWarmUp;
+        return this;
+    }
+
+    /**
+     * When enabled (the default), a receiver keeps the Redis cache of the previous run and
+     * only drops the types whose fields changed. When disabled, it clears every Architect
+     * key on start; use it when the previous run may have stopped without flushing its
+     * writes and no write-ahead log is enabled.
+     */
+    public Architect setWarmRestart(boolean warmRestart) {
+        this.warmRestart = warmRestart;
+        return this;
+    }
+
     public Architect setRedisCredentials(RedisCredentials redisCredentials) {
         this.redisCredentials = redisCredentials;
         return this;
@@ -78,16 +100,12 @@ public class Architect {
         boolean redisInitialized = false;
         try {
             if (redisCredentials != null) {
-                RedisManager.initialize(
-                    redisCredentials.getHost(),
-                    redisCredentials.getPassword(),
-                    redisCredentials.getPort(),
-                    redisCredentials.getTimeout(),
-                    redisCredentials.getMaxConnections(),
-                    isReceiver,
-                    redisCredentials.getDefaultTtlSeconds()
-                );
+                RedisManager.initialize(redisCredentials, isReceiver);
                 redisInitialized = true;
+                if (isReceiver && !warmRestart) {
+                    RedisManager.get().clearArchitectKeys();
+                }
+                RedisManager.get().getRedisQueueActionPool().setAsyncWarmUp(asyncWarmUp);
             }
 
             if (databaseCredentials != null) {
@@ -0,0 +1,277 @@
+package sh.fyz.architect.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Compact, schema-aware binary codec. Values are written in {@link EntitySchema} order
+ * without field names, each one as a one-byte tag followed by a fixed-size or
+ * length-prefixed payload. The header carries the schema fingerprint: entries written for
+ * another layout of the class are reported as misses instead of being misread.
+ * <p>
+ * Types without a dedicated tag are embedded as length-prefixed JSON.
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final int MAGIC = 0xA1;
+    private static final int VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int CHAR = 8;
+    private static final int STRING = 9;
+    private static final int UUID_TAG = 10;
+    private static final int ENUM = 11;
+    private static final int BIG_DECIMAL = 12;
+    private static final int BIG_INTEGER = 13;
+    private static final int INSTANT = 14;
+    private static final int LOCAL_DATE = 15;
+    private static final int LOCAL_DATE_TIME = 16;
+    private static final int LOCAL_TIME = 17;
+    private static final int DATE = 18;
+    private static final int BYTES = 19;
+    private static final int JSON = 20;
+    private static final int REFERENCE = 21;
+    private static final int COLLECTION = 22;
+
+    private final ObjectMapper objectMapper;
+
+    public BinaryCacheCodec() {
+        this(null);
+    }
+
+    /**
+     * @param objectMapper mapper used for values without a dedicated tag; defaults to
+     *                     {@link RedisManager#getObjectMapper()}
+     */
+    public BinaryCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object entity) throws Exception {
+        EntitySchema schema = EntitySchema.of(entity.getClass());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(schema.fingerprint());
+
+        for (EntitySchema.Property property : schema.properties()) {
+            Object value = property.get(entity);
+            if (value == null) {
+                out.writeByte(NULL);
+                continue;
+            }
+            switch (property.kind()) {
+                case REFERENCE -> {
+                    out.writeByte(REFERENCE);
+                    writeValue(out, EntitySchema.of(value.getClass()).idOf(value));
+                }
+                case COLLECTION -> {
+                    if (!(value instanceof Collection<?> collection)) {
+                        out.writeByte(NULL);
+                        continue;
+                    }
+                    List<Object> ids = new ArrayList<>(collection.size());
+                    for (Object item : collection) {
+                        if (item != null) {
+                            Object id = EntitySchema.of(item.getClass()).idOf(item);
+                            if (id != null) ids.add(id);
+                        }
+                    }
+                    out.writeByte(COLLECTION);
+                    out.writeInt(ids.size());
+                    for (Object id : ids) {
+                        writeValue(out, id);
+                    }
+                }
+                case VALUE -> writeValue(out, value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] data, Class<T> type, RelationResolver resolver) throws Exception {
+        EntitySchema schema = EntitySchema.of(type);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readUnsignedByte() != MAGIC || in.readUnsignedByte() != VERSION || in.readInt() != schema.fingerprint()) {
+            return null;
+        }
+
+        T entity = (T) schema.newInstance();
+        for (EntitySchema.Property property : schema.properties()) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case NULL -> {
+                }
+                case REFERENCE -> {
+                    Object id = readValue(in, in.readUnsignedByte(), Object.class, property);
+                    if (id != null) {
+                        resolver.resolveOne(entity, property, id);
+                    }
+                }
+                case COLLECTION -> {
+                    int size = in.readInt();
+                    List<Object> ids = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        ids.add(readValue(in, in.readUnsignedByte(), Object.class, property));
+                    }
+                    if (!ids.isEmpty() && property.target() != null) {
+                        resolver.resolveMany(entity, property, ids);
+                    }
+                }
+                default -> property.set(entity, readValue(in, tag, property.field().getType(), property));
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length > 1 && (data[0] & 0xFF) == MAGIC;
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof Byte b) {
+            out.writeByte(BYTE);
+            out.writeByte(b);
+        } else if (value instanceof Short s) {
+            out.writeByte(SHORT);
+            out.writeShort(s);
+        } else if (value instanceof Integer i) {
+            out.writeByte(INT);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(LONG);
+            out.writeLong(l);
+        } else if (value instanceof Float f) {
+            out.writeByte(FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(d);
+        } else if (value instanceof Character c) {
+            out.writeByte(CHAR);
+            out.writeChar(c);
+        } else if (value instanceof String s) {
+            out.writeByte(STRING);
+            writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof UUID uuid) {
+            out.writeByte(UUID_TAG);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (value instanceof Enum<?> e) {
+            out.writeByte(ENUM);
+            writeBytes(out, e.name().getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof BigDecimal decimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeBytes(out, decimal.toString().getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof BigInteger integer) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(out, integer.toByteArray());
+        } else if (value instanceof Instant instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        } else if (value instanceof LocalDate date) {
+            out.writeByte(LOCAL_DATE);
+            out.writeLong(date.toEpochDay());
+        } else if (value instanceof LocalDateTime dateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeLong(dateTime.toLocalDate().toEpochDay());
+            out.writeLong(dateTime.toLocalTime().toNanoOfDay());
+        } else if (value instanceof LocalTime time) {
+            out.writeByte(LOCAL_TIME);
+            out.writeLong(time.toNanoOfDay());
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[] raw) {
+            out.writeByte(BYTES);
+            writeBytes(out, raw);
+        } else {
+            out.writeByte(JSON);
+            writeBytes(out, mapper().writeValueAsBytes(value));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readValue(DataInputStream in, int tag, Class<?> targetType, EntitySchema.Property property)
+            throws IOException {
+        return switch (tag) {
+            case NULL -> null;
+            case BOOLEAN -> in.readBoolean();
+            case BYTE -> in.readByte();
+            case SHORT -> in.readShort();
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case FLOAT -> in.readFloat();
+            case DOUBLE -> in.readDouble();
+            case CHAR -> in.readChar();
+            case STRING -> new String(readBytes(in), StandardCharsets.UTF_8);
+            case UUID_TAG -> new UUID(in.readLong(), in.readLong());
+            case ENUM -> {
+                String name = new String(readBytes(in), StandardCharsets.UTF_8);
+                yield targetType.isEnum() ? Enum.valueOf((Class<? extends Enum>) targetType, name) : name;
+            }
+            case BIG_DECIMAL -> new BigDecimal(new String(readBytes(in), StandardCharsets.UTF_8));
+            case BIG_INTEGER -> new BigInteger(readBytes(in));
+            case INSTANT -> Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case LOCAL_DATE -> LocalDate.ofEpochDay(in.readLong());
+            case LOCAL_DATE_TIME -> LocalDateTime.of(LocalDate.ofEpochDay(in.readLong()), LocalTime.ofNanoOfDay(in.readLong()));
+            case LOCAL_TIME -> LocalTime.ofNanoOfDay(in.readLong());
+            case DATE -> new Date(in.readLong());
+            case BYTES -> readBytes(in);
+            case JSON -> {
+                byte[] json = readBytes(in);
+                yield targetType == Object.class
+                        ? mapper().readValue(json, Object.class)
+                        : mapper().readValue(json, mapper().getTypeFactory().constructType(property.field().getGenericType()));
+            }
+            default -> throw new IOException("Unknown binary cache tag " + tag + " for field " + property.name());
+        };
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private ObjectMapper mapper() {
+        return objectMapper != null ? objectMapper : RedisManager.get().getObjectMapper();
+    }
+}
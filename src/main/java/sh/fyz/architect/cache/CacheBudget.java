@@ -0,0 +1,29 @@
+package sh.fyz.architect.cache;
+
+/**
+ * Upper bound on what a type may keep in Redis: a number of entries, an amount of memory,
+ * or both ({@code 0} = unbounded). Entries beyond it are evicted least recently used first.
+ */
+public record CacheBudget(long maxEntries, long maxBytes) {
+
+    public CacheBudget {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("maxEntries and maxBytes must be >= 0 (0 = unbounded)");
+        }
+        if (maxEntries == 0 && maxBytes == 0) {
+            throw new IllegalArgumentException("A budget needs maxEntries or maxBytes");
+        }
+    }
+
+    public static CacheBudget entries(long maxEntries) {
+        return new CacheBudget(maxEntries, 0);
+    }
+
+    public static CacheBudget memory(long maxBytes) {
+        return new CacheBudget(0, maxBytes);
+    }
+
+    public static CacheBudget of(CacheLimit annotation) {
+        return new CacheBudget(annotation.maxEntries(), annotation.maxBytes());
+    }
+}
@@ -0,0 +1,33 @@
+package sh.fyz.architect.cache;
+
+import java.util.List;
+
+/**
+ * Converts entities to and from the bytes stored in Redis. Relations are written as the
+ * ids of the related entities; on decode they are handed to a {@link RelationResolver},
+ * which decides how and when the related entities are loaded.
+ * <p>
+ * The codec of a type is chosen with {@link RedisManager#setCodec}. Values written by
+ * another codec stay readable as long as that codec recognizes them
+ * ({@link #canDecode}), so a type can switch codecs without flushing its cache.
+ */
+public interface CacheCodec {
+
+    byte[] encode(Object entity) throws Exception;
+
+    /**
+     * Returns the decoded entity, or {@code null} when the bytes are not usable by this
+     * codec anymore (e.g. written for an older layout of the class), in which case the
+     * entry is treated as a cache miss.
+     */
+    <T> T decode(byte[] data, Class<T> type, RelationResolver resolver) throws Exception;
+
+    boolean canDecode(byte[] data);
+
+    interface RelationResolver {
+
+        void resolveOne(Object owner, EntitySchema.Property property, Object id) throws Exception;
+
+        void resolveMany(Object owner, EntitySchema.Property property, List<Object> ids) throws Exception;
+    }
+}
@@ -0,0 +1,23 @@
+package sh.fyz.architect.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity field as indexed in Redis. Cached repositories keep a
+ * {@code value -> ids} set per distinct value so that {@code EQ}, {@code IN} and
+ * {@code IS_NULL} conditions on this field only fetch the matching entities instead
+ * of scanning the whole type.
+ * <p>
+ * With {@code sorted = true} the field (numeric or temporal) is kept in a sorted set
+ * instead, which additionally serves {@code GT}/{@code GTE}/{@code LT}/{@code LTE}
+ * conditions and lets {@code orderBy(field).limit(n)} read just the requested page.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CacheIndexed {
+
+    boolean sorted() default false;
+}
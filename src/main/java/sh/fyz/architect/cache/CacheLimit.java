@@ -0,0 +1,24 @@
+package sh.fyz.architect.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caps the Redis footprint of an entity class, so that only its working set stays cached.
+ * Once over {@code maxEntries} entries or about {@code maxBytes} bytes ({@code 0} =
+ * unbounded), the least recently read or written entries are evicted by the receiver.
+ * <p>
+ * A bounded type is never complete in the cache: its queries, counts and {@code all()}
+ * read from the database, while {@code findById} keeps using the cache. A budget set with
+ * {@link RedisManager#setCacheBudget} takes precedence.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CacheLimit {
+
+    long maxEntries() default 0;
+
+    long maxBytes() default 0;
+}
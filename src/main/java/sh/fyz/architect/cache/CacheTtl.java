@@ -0,0 +1,23 @@
+package sh.fyz.architect.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how long cached entries of an entity class live in Redis, overriding the default
+ * TTL of {@link RedisCredentials}. {@code seconds = 0} keeps entries until they are evicted.
+ * <p>
+ * With {@code sliding = true} every read of an entry pushes its expiry back to
+ * {@code seconds} from now, so entities in use stay resident while idle ones expire.
+ * A policy set with {@link RedisManager#setExpiryPolicy} takes precedence.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CacheTtl {
+
+    int seconds();
+
+    boolean sliding() default false;
+}
@@ -37,7 +37,7 @@ public class EntityChannelPubSub<T> {
     public void publish(DatabaseAction<T> action) {
         try {
             String message = RedisManager.get().getObjectMapper().writeValueAsString(action);
-            try (Jedis jedis = RedisManager.get().getJedisPool().getResource()) {
+            try (Jedis jedis = RedisManager.get().getResource()) {
                 jedis.publish(channelName, message);
             }
         } catch (JsonProcessingException e) {
@@ -56,7 +56,7 @@ public class EntityChannelPubSub<T> {
     private void subscribeLoop() {
         long backoff = INITIAL_BACKOFF_MS;
         while (RedisManager.isInitialized() && RedisManager.get().isAlive()) {
-            try (Jedis jedis = RedisManager.get().getJedisPool().getResource()) {
+            try (Jedis jedis = RedisManager.get().getResource()) {
                 JedisPubSub pubSub = new JedisPubSub() {
                     @Override
                     public void onMessage(String channel, String message) {
@@ -0,0 +1,545 @@
+package sh.fyz.architect.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ZAddParams;
+import sh.fyz.architect.repositories.QueryBuilder;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Secondary indexes of one cached entity type. Each indexed field keeps one sorted set
+ * ({@code architect:~idx:Type:~h:field}) whose members are the ids, scored by a 53-bit hash
+ * of the indexed value, so that an id has exactly one entry per field and is re-indexed or
+ * removed by a blind write: no previous value has to be read first. Hash collisions only
+ * add candidates.
+ * <p>
+ * Sorted indexes store numeric and temporal fields in a sorted set
+ * ({@code architect:~idx:Type:~z:field}, score = value) and their nulls in a set
+ * ({@code architect:~idx:Type:~n:field}). Scores are doubles: longs beyond 2^53 and
+ * sub-millisecond timestamps are compared at double precision.
+ * <p>
+ * Fields indexed at runtime are declared in {@code architect:~idx:Type:~fields}: every write
+ * reads that hash in its own pipeline, so a node learns the indexes declared by other nodes
+ * before its write returns. Index writes are queued on the caller's pipeline or transaction
+ * ({@link #index(PipeliningBase, Object, Object)}), next to the entry they index.
+ * <p>
+ * Index lookups only narrow down the candidates: callers still evaluate every condition
+ * on the fetched entities, so stale entries (expired or externally deleted keys) never
+ * produce wrong results.
+ */
+public class EntityIndex {
+
+    private static final Logger LOG = Logger.getLogger(EntityIndex.class.getName());
+    private static final String NULL_VALUE = "\u0000";
+    private static final String PLAIN = "plain";
+    private static final String SORTED = "sorted";
+
+    private final Class<?> type;
+    private final String keyBase;
+    private final Map<String, EntitySchema.Property> fields = new ConcurrentHashMap<>();
+    private final Set<String> sortedFields = ConcurrentHashMap.newKeySet();
+
+    public EntityIndex(Class<?> type) {
+        this.type = type;
+        this.keyBase = RedisManager.get().getKeyPrefix() + "~idx:" + RedisManager.get().namespace(type) + ":";
+        for (EntitySchema.Property property : EntitySchema.of(type).properties()) {
+            CacheIndexed annotation = property.field().getAnnotation(CacheIndexed.class);
+            if (annotation != null) {
+                register(property, annotation.sorted());
+            }
+        }
+        try (Jedis jedis = RedisManager.get().getResource(keyBase)) {
+            learn(jedis.hgetAll(declaredKey()));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read the declared indexes of " + type.getSimpleName()
+                    + " from Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Declares an additional indexed field at runtime, for every node. Returns {@code false}
+     * when the field was already indexed on this node; it is declared again in Redis anyway,
+     * in case the declarations were cleared. Entities cached before this call are
+     * not indexed until they are saved again; callers are expected to {@link #backfill} the
+     * existing entries.
+     */
+    public boolean addField(String fieldName, boolean sorted) {
+        EntitySchema.Property property = EntitySchema.of(type).property(fieldName);
+        if (property == null) {
+            throw new IllegalArgumentException(
+                "Invalid field name '" + fieldName + "' for entity " + type.getSimpleName()
+            );
+        }
+        if (sorted && !isScorable(property.field().getType())) {
+            throw new IllegalArgumentException("Sorted cache index on " + type.getSimpleName() + "."
+                    + fieldName + " requires a numeric or temporal field, got " + property.field().getType().getName());
+        }
+        String kind = sorted ? SORTED : PLAIN;
+        try (Jedis jedis = RedisManager.get().getResource(keyBase)) {
+            if (jedis.hsetnx(declaredKey(), fieldName, kind) == 0) {
+                String declared = jedis.hget(declaredKey(), fieldName);
+                if (!kind.equals(declared)) {
+                    throw new IllegalArgumentException("Cache index on " + type.getSimpleName() + "." + fieldName
+                            + " is already declared as " + declared);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to declare cache index in Redis: " + e.getMessage(), e);
+        }
+        return register(property, sorted);
+    }
+
+    private synchronized boolean register(EntitySchema.Property property, boolean sorted) {
+        if (fields.containsKey(property.name())) {
+            return false;
+        }
+        Class<?> fieldType = property.field().getType();
+        if (sorted && !isScorable(fieldType)) {
+            throw new IllegalArgumentException("Sorted cache index on " + type.getSimpleName() + "."
+                    + property.name() + " requires a numeric or temporal field, got " + fieldType.getName());
+        }
+        if (sorted) {
+            sortedFields.add(property.name());
+        }
+        fields.put(property.name(), property);
+        return true;
+    }
+
+    /**
+     * Registers the declared fields this node does not index yet and returns their names.
+     */
+    private List<String> learn(Map<String, String> declared) {
+        List<String> learned = new ArrayList<>();
+        for (Map.Entry<String, String> entry : declared.entrySet()) {
+            if (fields.containsKey(entry.getKey())) continue;
+            EntitySchema.Property property = EntitySchema.of(type).property(entry.getKey());
+            if (property == null) {
+                LOG.warning("Ignoring cache index on unknown field " + type.getSimpleName() + "." + entry.getKey());
+                continue;
+            }
+            if (register(property, SORTED.equals(entry.getValue()))) {
+                learned.add(entry.getKey());
+            }
+        }
+        return learned;
+    }
+
+    public boolean isEmpty() {
+        return fields.isEmpty();
+    }
+
+    public boolean isIndexed(String fieldName) {
+        return fields.containsKey(fieldName);
+    }
+
+    public boolean isSorted(String fieldName) {
+        return sortedFields.contains(fieldName);
+    }
+
+    public Set<String> getIndexedFields() {
+        return Collections.unmodifiableSet(fields.keySet());
+    }
+
+    /**
+     * Queues the index entries of {@code entity} on {@code pipeline}, replacing those of its
+     * previous value, along with a read of the declared fields. Pass the returned response
+     * to {@link #sync} once the pipeline or transaction has run.
+     */
+    public Response<Map<String, String>> index(PipeliningBase pipeline, Object id, Object entity) {
+        write(pipeline, String.valueOf(id), entity, fields.keySet(), false);
+        return pipeline.hgetAll(declaredKey());
+    }
+
+    /**
+     * Queues the removal of the index entries of {@code id} on {@code pipeline}, along with
+     * a read of the declared fields. Pass the returned response to {@link #sync}.
+     */
+    public Response<Map<String, String>> remove(PipeliningBase pipeline, Object id) {
+        write(pipeline, String.valueOf(id), null, fields.keySet(), false);
+        return pipeline.hgetAll(declaredKey());
+    }
+
+    /**
+     * Completes a write queued by {@link #index} ({@code entity} set) or {@link #remove}
+     * ({@code entity} null): fields declared by another node since this node last looked
+     * are registered, and {@code id} is indexed for them in one more round trip.
+     */
+    public void sync(Response<Map<String, String>> declared, Object id, Object entity) {
+        List<String> learned = learn(declared.get());
+        if (learned.isEmpty()) return;
+        try (Jedis jedis = RedisManager.get().getResource(keyBase)) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                write(pipeline, String.valueOf(id), entity, learned, false);
+                pipeline.sync();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to index entity in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Indexes entities loaded from the database, by id, in one round trip. Ids that are
+     * already indexed keep their entries, which may come from a newer write.
+     */
+    public void backfill(Map<?, ?> entities) {
+        backfill(entities, fields.keySet());
+    }
+
+    /**
+     * Same as {@link #backfill(Map)}, for {@code fieldNames} only.
+     */
+    public void backfill(Map<?, ?> entities, Collection<String> fieldNames) {
+        writeAll(entities, fieldNames, true);
+    }
+
+    /**
+     * Indexes entities whose cached value was just replaced, by id, in one round trip,
+     * overwriting their entries.
+     */
+    public void reindex(Map<?, ?> entities) {
+        writeAll(entities, fields.keySet(), false);
+    }
+
+    private void writeAll(Map<?, ?> entities, Collection<String> fieldNames, boolean ifAbsent) {
+        if (fieldNames.isEmpty() || entities.isEmpty()) return;
+        try (Jedis jedis = RedisManager.get().getResource(keyBase)) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (Map.Entry<?, ?> entry : entities.entrySet()) {
+                    write(pipeline, String.valueOf(entry.getKey()), entry.getValue(), fieldNames, ifAbsent);
+                }
+                pipeline.sync();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to index entities in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Queues the index writes of one id: its entries are overwritten (ZADD), kept when
+     * {@code ifAbsent} (ZADD NX), or removed when {@code entity} is null.
+     */
+    private void write(PipeliningBase pipeline, String id, Object entity, Collection<String> fieldNames,
+                       boolean ifAbsent) {
+        ZAddParams params = ifAbsent ? ZAddParams.zAddParams().nx() : ZAddParams.zAddParams();
+        for (String field : fieldNames) {
+            boolean sorted = sortedFields.contains(field);
+            if (entity == null) {
+                if (sorted) {
+                    pipeline.zrem(sortedKey(field), id);
+                    pipeline.srem(nullKey(field), id);
+                } else {
+                    pipeline.zrem(hashedKey(field), id);
+                }
+                continue;
+            }
+            Object value;
+            try {
+                value = fields.get(field).get(entity);
+            } catch (IllegalAccessException e) {
+                LOG.warning("Failed to read indexed field " + field + " of " + type.getSimpleName()
+                        + ": " + e.getMessage());
+                continue;
+            }
+            if (!sorted) {
+                pipeline.zadd(hashedKey(field), hash(encode(value)), id, params);
+                continue;
+            }
+            Double score = score(value);
+            if (score == null) {
+                if (!ifAbsent) {
+                    pipeline.zrem(sortedKey(field), id);
+                }
+                pipeline.sadd(nullKey(field), id);
+            } else {
+                pipeline.zadd(sortedKey(field), score, id, params);
+                if (!ifAbsent) {
+                    pipeline.srem(nullKey(field), id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the conditions that target an indexed field to the intersection of their id
+     * sets, in a single pipelined round trip. {@code EQ}, {@code IN} and {@code IS_NULL} are
+     * served by every index, {@code GT}/{@code GTE}/{@code LT}/{@code LTE} by sorted ones
+     * (with inclusive bounds, the exact comparison being left to the caller).
+     * Returns {@code null} when none of the conditions can be served by an index.
+     */
+    public Set<String> candidateIds(List<QueryBuilder.Condition> conditions) {
+        if (fields.isEmpty()) return null;
+
+        List<List<Lookup>> groups = new ArrayList<>();
+        for (QueryBuilder.Condition condition : conditions) {
+            List<Lookup> group = lookupsFor(condition);
+            if (group != null) {
+                groups.add(group);
+            }
+        }
+        if (groups.isEmpty()) return null;
+
+        try (Jedis jedis = RedisManager.get().getResource(keyBase)) {
+            List<List<Response<? extends Collection<String>>>> responses = new ArrayList<>(groups.size());
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (List<Lookup> group : groups) {
+                    List<Response<? extends Collection<String>>> groupResponses = new ArrayList<>(group.size());
+                    for (Lookup lookup : group) {
+                        if (lookup.min() == null) {
+                            groupResponses.add(pipeline.smembers(lookup.key()));
+                        } else {
+                            groupResponses.add(pipeline.zrangeByScore(lookup.key(), lookup.min(), lookup.max()));
+                        }
+                    }
+                    responses.add(groupResponses);
+                }
+                pipeline.sync();
+            }
+
+            Set<String> result = null;
+            for (List<Response<? extends Collection<String>>> groupResponses : responses) {
+                Set<String> union = new HashSet<>();
+                for (Response<? extends Collection<String>> response : groupResponses) {
+                    union.addAll(response.get());
+                }
+                if (result == null) {
+                    result = union;
+                } else {
+                    result.retainAll(union);
+                }
+                if (result.isEmpty()) break;
+            }
+            return result;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to query Redis index: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads one ordered page of ids straight from a sorted index, pushing the range
+     * conditions, the order and the offset/limit into a single {@code ZRANGEBYSCORE}.
+     * Only applies when the query orders by one sorted field, every condition targets that
+     * same field, and the field holds no nulls (whose position the sorted set cannot express).
+     * Returns {@code null} when the query cannot be served this way.
+     */
+    public List<String> orderedIds(List<QueryBuilder.Condition> conditions, List<QueryBuilder.OrderBy> orderBys,
+                                   int offset, int limit) {
+        if (orderBys.size() != 1) return null;
+        String field = orderBys.get(0).field();
+        if (!sortedFields.contains(field)) return null;
+
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        boolean minExclusive = false;
+        boolean maxExclusive = false;
+        for (QueryBuilder.Condition condition : conditions) {
+            if (!field.equals(condition.field())) return null;
+            if (condition.operator() == QueryBuilder.Operator.IS_NOT_NULL) continue;
+            Double score = score(condition.value());
+            if (score == null) return null;
+            switch (condition.operator()) {
+                case EQ -> {
+                    if (score > min || (score == min && minExclusive)) {
+                        min = score;
+                        minExclusive = false;
+                    }
+                    if (score < max || (score == max && maxExclusive)) {
+                        max = score;
+                        maxExclusive = false;
+                    }
+                }
+                case GT, GTE -> {
+                    boolean exclusive = condition.operator() == QueryBuilder.Operator.GT;
+                    if (score > min || (score == min && exclusive)) {
+                        min = score;
+                        minExclusive = exclusive;
+                    }
+                }
+                case LT, LTE -> {
+                    boolean exclusive = condition.operator() == QueryBuilder.Operator.LT;
+                    if (score < max || (score == max && exclusive)) {
+                        max = score;
+                        maxExclusive = exclusive;
+                    }
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+
+        String minBound = bound(min, minExclusive);
+        String maxBound = bound(max, maxExclusive);
+        int count = limit > 0 ? limit : -1;
+        boolean descending = orderBys.get(0).order() == QueryBuilder.SortOrder.DESC;
+        try (Jedis jedis = RedisManager.get().getResource(keyBase)) {
+            Response<Long> nulls;
+            Response<List<String>> page;
+            try (Pipeline pipeline = jedis.pipelined()) {
+                nulls = pipeline.scard(nullKey(field));
+                page = descending
+                        ? pipeline.zrevrangeByScore(sortedKey(field), maxBound, minBound, offset, count)
+                        : pipeline.zrangeByScore(sortedKey(field), minBound, maxBound, offset, count);
+                pipeline.sync();
+            }
+            return nulls.get() > 0 ? null : page.get();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to query Redis sorted index: " + e.getMessage(), e);
+        }
+    }
+
+    private List<Lookup> lookupsFor(QueryBuilder.Condition condition) {
+        String field = condition.field();
+        if (!fields.containsKey(field)) return null;
+        boolean sorted = sortedFields.contains(field);
+
+        switch (condition.operator()) {
+            case IS_NULL -> {
+                return List.of(lookupEquals(field, sorted, null));
+            }
+            case EQ -> {
+                return List.of(lookupEquals(field, sorted, condition.value()));
+            }
+            case IN -> {
+                if (!(condition.value() instanceof Collection<?> values)) return null;
+                Map<String, Lookup> lookups = new LinkedHashMap<>();
+                for (Object value : values) {
+                    Lookup lookup = lookupEquals(field, sorted, value);
+                    lookups.putIfAbsent(lookup.key() + lookup.min(), lookup);
+                }
+                return new ArrayList<>(lookups.values());
+            }
+            case GT, GTE, LT, LTE -> {
+                if (!sorted) return null;
+                Double score = score(condition.value());
+                if (score == null) return null;
+                String bound = Double.toString(score);
+                boolean lower = condition.operator() == QueryBuilder.Operator.GT
+                        || condition.operator() == QueryBuilder.Operator.GTE;
+                return List.of(lower
+                        ? new Lookup(sortedKey(field), bound, "+inf")
+                        : new Lookup(sortedKey(field), "-inf", bound));
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private Lookup lookupEquals(String field, boolean sorted, Object value) {
+        if (sorted) {
+            Double score = score(value);
+            if (score == null) {
+                return new Lookup(nullKey(field), null, null);
+            }
+            String bound = Double.toString(score);
+            return new Lookup(sortedKey(field), bound, bound);
+        }
+        String bound = Long.toString(hash(encode(value)));
+        return new Lookup(hashedKey(field), bound, bound);
+    }
+
+    /**
+     * One index read: a set ({@code min == null}) or a sorted-set score range.
+     */
+    private record Lookup(String key, String min, String max) {}
+
+    /**
+     * Normalizes a value to its index representation. Numbers are compared by value
+     * ({@code 10}, {@code 10L} and {@code 10.0} share the same entry), enums by name.
+     */
+    static String encode(Object value) {
+        if (value == null) return NULL_VALUE;
+        if (value instanceof Enum<?> e) return e.name();
+        if (value instanceof Number number) {
+            try {
+                return new BigDecimal(number.toString()).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException e) {
+                return number.toString();
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * 64-bit FNV-1a of the encoded value, truncated to 53 bits so that the sorted-set score
+     * holds it exactly.
+     */
+    static long hash(String encoded) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : encoded.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash >>> 11;
+    }
+
+    /**
+     * Maps a numeric or temporal value to its sorted-set score, or {@code null} when the
+     * value cannot be scored. Instants are scored in epoch milliseconds, local date-times
+     * as UTC, dates in epoch days and times in nanoseconds of the day.
+     */
+    static Double score(Object value) {
+        if (value instanceof Number number) return number.doubleValue();
+        if (value instanceof Instant instant) return (double) instant.toEpochMilli();
+        if (value instanceof LocalDateTime dateTime) return (double) dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+        if (value instanceof OffsetDateTime dateTime) return (double) dateTime.toInstant().toEpochMilli();
+        if (value instanceof ZonedDateTime dateTime) return (double) dateTime.toInstant().toEpochMilli();
+        if (value instanceof LocalDate date) return (double) date.toEpochDay();
+        if (value instanceof LocalTime time) return (double) time.toNanoOfDay();
+        if (value instanceof Duration duration) return (double) duration.toMillis();
+        if (value instanceof Date date) return (double) date.getTime();
+        return null;
+    }
+
+    private static boolean isScorable(Class<?> fieldType) {
+        return (fieldType.isPrimitive() && fieldType != boolean.class && fieldType != char.class)
+                || Number.class.isAssignableFrom(fieldType)
+                || fieldType == Instant.class
+                || fieldType == LocalDateTime.class
+                || fieldType == OffsetDateTime.class
+                || fieldType == ZonedDateTime.class
+                || fieldType == LocalDate.class
+                || fieldType == LocalTime.class
+                || fieldType == Duration.class
+                || Date.class.isAssignableFrom(fieldType);
+    }
+
+    private static String bound(double value, boolean exclusive) {
+        if (value == Double.NEGATIVE_INFINITY) return "-inf";
+        if (value == Double.POSITIVE_INFINITY) return "+inf";
+        return (exclusive ? "(" : "") + value;
+    }
+
+    private String hashedKey(String field) {
+        return keyBase + "~h:" + field;
+    }
+
+    private String sortedKey(String field) {
+        return keyBase + "~z:" + field;
+    }
+
+    private String nullKey(String field) {
+        return keyBase + "~n:" + field;
+    }
+
+    private String declaredKey() {
+        return keyBase + "~fields";
+    }
+}
@@ -0,0 +1,256 @@
+package sh.fyz.architect.cache;
+
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToMany;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.OneToOne;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached description of how an entity class is laid out in Redis: its persistent fields in
+ * a stable order, which of them are relations (stored as ids) and which is the id. Built
+ * once per class and shared by the {@link CacheCodec codecs}, the cache indexes and the
+ * repositories, so that per-entity work never looks up fields or annotations again.
+ * <p>
+ * Fields are read and written through method handles resolved when the schema is built.
+ */
+public final class EntitySchema {
+
+    public enum Kind {
+        VALUE,
+        REFERENCE,
+        COLLECTION
+    }
+
+    public static final class Property {
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final Field field;
+        private final Kind kind;
+        private final Class<?> target;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Property(Field field, Kind kind, Class<?> target) {
+            this.field = field;
+            this.kind = kind;
+            this.target = target;
+            MethodHandles.Lookup lookup;
+            try {
+                lookup = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup());
+                this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access " + field.getDeclaringClass().getSimpleName()
+                    + "." + field.getName() + ": " + e.getMessage(), e);
+            }
+            MethodHandle writer;
+            try {
+                writer = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                writer = null;
+            }
+            this.setter = writer;
+        }
+
+        public String name() {
+            return field.getName();
+        }
+
+        public Field field() {
+            return field;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        /**
+         * The related entity class for {@link Kind#REFERENCE} and {@link Kind#COLLECTION}
+         * properties ({@code null} when the collection element type cannot be resolved).
+         */
+        public Class<?> target() {
+            return target;
+        }
+
+        public Object get(Object entity) throws IllegalAccessException {
+            try {
+                return getter.invokeExact(entity);
+            } catch (ClassCastException e) {
+                throw new IllegalArgumentException("Cannot read " + name() + " from " + entity.getClass().getName(), e);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Writes {@code value} to the field. Like {@link Field#set}, a value of the wrong
+         * type, or {@code null} for a primitive field, is an {@link IllegalArgumentException}.
+         */
+        public void set(Object entity, Object value) throws IllegalAccessException {
+            if (setter == null) {
+                field.set(entity, value);
+                return;
+            }
+            try {
+                setter.invokeExact(entity, value);
+            } catch (ClassCastException | NullPointerException e) {
+                if (entity == null) throw e;
+                throw new IllegalArgumentException("Cannot set " + name() + " of " + entity.getClass().getName()
+                    + " to " + (value == null ? "null" : value.getClass().getName()), e);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Collection<Object> newCollection() {
+            return List.class.isAssignableFrom(field.getType()) ? new ArrayList<>() : new HashSet<>();
+        }
+    }
+
+    private static final ConcurrentHashMap<Class<?>, EntitySchema> SCHEMAS = new ConcurrentHashMap<>();
+
+    private final Class<?> type;
+    private final List<Property> properties;
+    private final Map<String, Property> byName;
+    private final Property idProperty;
+    private final int fingerprint;
+    private final MethodHandle constructor;
+
+    private EntitySchema(Class<?> type) {
+        this.type = type;
+        Map<String, Property> byName = new LinkedHashMap<>();
+        Class<?> current = type;
+        while (current != null && current != Object.class) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+                field.setAccessible(true);
+                byName.putIfAbsent(field.getName(), new Property(field, kindOf(field), targetOf(field)));
+            }
+            current = current.getSuperclass();
+        }
+        this.properties = List.copyOf(byName.values());
+        this.byName = Map.copyOf(byName);
+
+        Property id = null;
+        int hash = 1;
+        for (Property property : properties) {
+            if (id == null && property.field.isAnnotationPresent(Id.class)) {
+                id = property;
+            }
+            hash = 31 * hash + property.name().hashCode();
+            hash = 31 * hash + property.field.getType().getName().hashCode();
+            hash = 31 * hash + property.kind.ordinal();
+        }
+        this.idProperty = id;
+        this.fingerprint = hash;
+        this.constructor = findConstructor(type);
+    }
+
+    private static MethodHandle findConstructor(Class<?> type) {
+        if (Modifier.isAbstract(type.getModifiers())) return null;
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+                .findConstructor(type, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public static EntitySchema of(Class<?> type) {
+        return SCHEMAS.computeIfAbsent(type, EntitySchema::new);
+    }
+
+    public Class<?> type() {
+        return type;
+    }
+
+    public List<Property> properties() {
+        return properties;
+    }
+
+    public Property idProperty() {
+        return idProperty;
+    }
+
+    public Set<String> propertyNames() {
+        return byName.keySet();
+    }
+
+    /**
+     * The property named {@code name}, or {@code null} when the class has no such
+     * persistent field.
+     */
+    public Property property(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Hash of the field names, types and relation kinds. Changes whenever the mapped
+     * layout of the class changes.
+     */
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    public Object idOf(Object entity) throws IllegalAccessException {
+        return idProperty == null || entity == null ? null : idProperty.get(entity);
+    }
+
+    public Object newInstance() throws ReflectiveOperationException {
+        if (constructor == null) {
+            throw new NoSuchMethodException(type.getName() + " has no accessible no-argument constructor");
+        }
+        try {
+            return constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new java.lang.reflect.InvocationTargetException(e);
+        }
+    }
+
+    private static Kind kindOf(Field field) {
+        if (field.isAnnotationPresent(ManyToOne.class) || field.isAnnotationPresent(OneToOne.class)) {
+            return Kind.REFERENCE;
+        }
+        if (field.isAnnotationPresent(OneToMany.class) || field.isAnnotationPresent(ManyToMany.class)) {
+            return Kind.COLLECTION;
+        }
+        return Kind.VALUE;
+    }
+
+    private static Class<?> targetOf(Field field) {
+        return switch (kindOf(field)) {
+            case REFERENCE -> field.getType();
+            case COLLECTION -> elementType(field);
+            case VALUE -> null;
+        };
+    }
+
+    private static Class<?> elementType(Field field) {
+        Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType parameterizedType) {
+            Type[] typeArgs = parameterizedType.getActualTypeArguments();
+            if (typeArgs.length > 0 && typeArgs[0] instanceof Class<?> clazz) {
+                return clazz;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,48 @@
+package sh.fyz.architect.cache;
+
+import java.time.Duration;
+
+/**
+ * Lifetime of the cached entries of a type: no expiry, a fixed TTL set on write, or a
+ * sliding TTL that every read refreshes.
+ */
+public record ExpiryPolicy(int ttlSeconds, boolean sliding) {
+
+    private static final ExpiryPolicy NONE = new ExpiryPolicy(0, false);
+
+    public ExpiryPolicy {
+        if (ttlSeconds < 0) {
+            throw new IllegalArgumentException("ttlSeconds must be >= 0 (0 = no expiry)");
+        }
+        if (sliding && ttlSeconds == 0) {
+            throw new IllegalArgumentException("A sliding expiry needs a TTL");
+        }
+    }
+
+    public static ExpiryPolicy none() {
+        return NONE;
+    }
+
+    public static ExpiryPolicy fixed(Duration ttl) {
+        return new ExpiryPolicy(toSeconds(ttl), false);
+    }
+
+    public static ExpiryPolicy sliding(Duration ttl) {
+        return new ExpiryPolicy(toSeconds(ttl), true);
+    }
+
+    public static ExpiryPolicy of(CacheTtl annotation) {
+        return new ExpiryPolicy(annotation.seconds(), annotation.sliding());
+    }
+
+    public boolean expires() {
+        return ttlSeconds > 0;
+    }
+
+    private static int toSeconds(Duration ttl) {
+        if (ttl == null || ttl.getSeconds() < 1) {
+            throw new IllegalArgumentException("ttl must be at least one second");
+        }
+        return Math.toIntExact(ttl.getSeconds());
+    }
+}
@@ -0,0 +1,122 @@
+package sh.fyz.architect.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.*;
+
+/**
+ * Default codec: the entity is written as a JSON object of its fields, relations being
+ * replaced by {@code field_id} / {@code field_ids} entries.
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE_REF = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper;
+
+    public JsonCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object entity) throws Exception {
+        Map<String, Object> jsonMap = new HashMap<>();
+        for (EntitySchema.Property property : EntitySchema.of(entity.getClass()).properties()) {
+            Object value = property.get(entity);
+            if (value == null) continue;
+
+            switch (property.kind()) {
+                case REFERENCE -> {
+                    EntitySchema related = EntitySchema.of(value.getClass());
+                    if (related.idProperty() != null) {
+                        jsonMap.put(property.name() + "_id", related.idOf(value));
+                    }
+                }
+                case COLLECTION -> {
+                    if (value instanceof Collection<?> collection) {
+                        List<Object> ids = new ArrayList<>();
+                        for (Object item : collection) {
+                            if (item != null) {
+                                EntitySchema related = EntitySchema.of(item.getClass());
+                                if (related.idProperty() != null) {
+                                    ids.add(related.idOf(item));
+                                }
+                            }
+                        }
+                        if (!ids.isEmpty()) {
+                            jsonMap.put(property.name() + "_ids", ids);
+                        }
+                    }
+                }
+                case VALUE -> jsonMap.put(property.name(), value);
+            }
+        }
+        return objectMapper.writeValueAsBytes(jsonMap);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] data, Class<T> type, RelationResolver resolver) throws Exception {
+        Map<String, Object> rawData = objectMapper.readValue(data, MAP_TYPE_REF);
+        EntitySchema schema = EntitySchema.of(type);
+        T entity = (T) schema.newInstance();
+
+        for (EntitySchema.Property property : schema.properties()) {
+            String fieldName = property.name();
+            if (rawData.containsKey(fieldName)) {
+                property.set(entity, convertValue(rawData.get(fieldName), property.field().getType()));
+            } else if (property.kind() == EntitySchema.Kind.REFERENCE) {
+                Object idValue = rawData.get(fieldName + "_id");
+                if (idValue != null) {
+                    resolver.resolveOne(entity, property, idValue);
+                }
+            } else if (property.kind() == EntitySchema.Kind.COLLECTION) {
+                List<Object> ids = (List<Object>) rawData.get(fieldName + "_ids");
+                if (ids != null && !ids.isEmpty() && property.target() != null) {
+                    resolver.resolveMany(entity, property, ids);
+                }
+            }
+        }
+        return entity;
+    }
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return data.length > 0 && data[0] == '{';
+    }
+
+    private Object convertValue(Object value, Class<?> targetType) {
+        if (value == null) {
+            return null;
+        }
+
+        if (targetType.isAssignableFrom(value.getClass())) {
+            return value;
+        }
+
+        if (targetType == Long.class || targetType == long.class) {
+            if (value instanceof Integer) {
+                return ((Integer) value).longValue();
+            }
+            if (value instanceof String) {
+                return Long.parseLong((String) value);
+            }
+        }
+
+        if (targetType == Integer.class || targetType == int.class) {
+            if (value instanceof Long) {
+                return ((Long) value).intValue();
+            }
+            if (value instanceof String) {
+                return Integer.parseInt((String) value);
+            }
+        }
+
+        if (targetType == UUID.class && value instanceof String) {
+            return UUID.fromString((String) value);
+        }
+
+        return value;
+    }
+}
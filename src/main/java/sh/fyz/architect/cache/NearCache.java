@@ -0,0 +1,140 @@
+package sh.fyz.architect.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, TTL-limited in-JVM cache sitting in front of {@link RedisManager} for one entity
+ * type. Reads are lock-free map lookups; once {@code maxEntries} is exceeded the oldest
+ * inserted entries are evicted first.
+ * <p>
+ * Entries are dropped whenever any node saves or deletes the key (see
+ * {@link NearCacheInvalidator}). Cached instances are shared between callers, so they must
+ * be treated as read-only: modify a copy, or modify and {@code save} it right away.
+ */
+public class NearCache<T> {
+
+    private record Entry<T>(T value, long expiresAt, long sequence) {}
+
+    private record Slot(String key, long sequence) {}
+
+    private final ConcurrentHashMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Slot> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequences = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    public NearCache(int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be a positive duration");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public T get(String key) {
+        Entry<T> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt() > 0) {
+            entries.remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value();
+    }
+
+    /**
+     * Returns a stamp to pass to {@link #put} once the value has been loaded. A load that
+     * raced with an invalidation is then discarded instead of caching a stale value.
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    public void put(String key, T value, long stamp) {
+        if (value == null || invalidations.get() != stamp) {
+            return;
+        }
+        long sequence = sequences.incrementAndGet();
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos, sequence));
+        insertionOrder.add(new Slot(key, sequence));
+        queued.incrementAndGet();
+        evictOverflow();
+    }
+
+    public void invalidate(String key) {
+        invalidations.incrementAndGet();
+        entries.remove(key);
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Evicts the oldest live entries above {@code maxEntries}. Slots left behind by
+     * overwritten or invalidated entries are skipped and dropped on the way, and are
+     * compacted once they outnumber the live entries so the queue stays bounded.
+     */
+    private void evictOverflow() {
+        while (entries.size() > maxEntries) {
+            Slot oldest = pollSlot();
+            if (oldest == null) {
+                return;
+            }
+            Entry<T> entry = entries.get(oldest.key());
+            if (entry != null && entry.sequence() == oldest.sequence()) {
+                entries.remove(oldest.key(), entry);
+            }
+        }
+        int slots = queued.get();
+        if (slots > 2 * Math.max(maxEntries, entries.size())) {
+            for (int i = 0; i < slots; i++) {
+                Slot slot = pollSlot();
+                if (slot == null) {
+                    return;
+                }
+                Entry<T> entry = entries.get(slot.key());
+                if (entry != null && entry.sequence() == slot.sequence()) {
+                    insertionOrder.add(slot);
+                    queued.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private Slot pollSlot() {
+        Slot slot = insertionOrder.poll();
+        if (slot != null) {
+            queued.decrementAndGet();
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,260 @@
+package sh.fyz.architect.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link NearCache near caches} of every node coherent. Each save or delete of a
+ * cached entity publishes its key on a single channel; every node drops that key from its
+ * local near cache. Messages carry the sender's node id so a node ignores its own writes
+ * (already invalidated locally). Since messages sent while the subscription is down are
+ * lost, every near cache is cleared whenever the subscription is (re-)established.
+ * <p>
+ * Only the types with a near cache on some node are published: each node lists its near
+ * cached types in {@code architect:~near} and reads the set back every second. Keys are
+ * queued and sent by a single publisher, one message per batch of keys; when too many keys
+ * are queued, the keys of a type collapse into one message that clears its near caches.
+ */
+public class NearCacheInvalidator {
+
+    private static final Logger LOG = Logger.getLogger(NearCacheInvalidator.class.getName());
+    private static final String CHANNEL = "architect:near-cache-invalidation";
+    private static final String TYPES_KEY = "architect:~near";
+    private static final String CLEAR_PREFIX = "*";
+
+    private static final long REFRESH_INTERVAL_MS = 1_000L;
+    private static final int MAX_PENDING_KEYS = 10_000;
+    private static final int MAX_KEYS_PER_MESSAGE = 500;
+
+    private static final long SUBSCRIBE_WAIT_MS = 2_000L;
+    private static final long INITIAL_BACKOFF_MS = 100L;
+    private static final long MAX_BACKOFF_MS = 5_000L;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, NearCache<?>> caches = new ConcurrentHashMap<>();
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+    private final CountDownLatch firstSubscription = new CountDownLatch(1);
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile Set<String> nearCachedTypes = Set.of();
+
+    private final Object pendingLock = new Object();
+    private Set<String> pendingKeys = new LinkedHashSet<>();
+    private boolean publishing;
+
+    private volatile JedisPubSub activeSubscription;
+
+    /**
+     * Registers the near cache of a type. The first registration starts the subscription and
+     * waits briefly for it, so that invalidations are not missed right after startup.
+     * Other nodes only start publishing the type once they re-read the near cached types, so
+     * the cache is cleared again after that delay.
+     */
+    public void register(String typeName, NearCache<?> cache) {
+        caches.put(typeName, cache);
+        try (Jedis jedis = RedisManager.get().getResource(TYPES_KEY)) {
+            jedis.sadd(TYPES_KEY, typeName);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to register near cache of " + typeName + " in Redis: " + e.getMessage(), e);
+        }
+        startRefresh();
+        if (subscribed.compareAndSet(false, true)) {
+            RedisManager.get().getPubSubExecutor().submit(this::subscribeLoop);
+        }
+        RedisManager.get().getPubSubExecutor().submit(() -> {
+            sleepQuietly(2 * REFRESH_INTERVAL_MS);
+            cache.clear();
+        });
+        try {
+            if (!firstSubscription.await(SUBSCRIBE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warning("Near cache invalidation channel not subscribed yet; continuing without waiting");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues the invalidation of {@code key} ({@code Type:id}) when some node near caches
+     * its type. Queued keys are published asynchronously, so writers do not pay an extra
+     * round trip.
+     */
+    public void publish(String key) {
+        int typeEnd = key.indexOf(':');
+        if (typeEnd < 0) return;
+        String typeName = key.substring(0, typeEnd);
+        startRefresh();
+        if (!nearCachedTypes.contains(typeName)) return;
+
+        synchronized (pendingLock) {
+            pendingKeys.add(pendingKeys.size() < MAX_PENDING_KEYS ? key : CLEAR_PREFIX + typeName);
+            if (publishing) return;
+            publishing = true;
+        }
+        try {
+            RedisManager.get().getPubSubExecutor().submit(this::publishPending);
+        } catch (RejectedExecutionException e) {
+            LOG.fine("Near cache invalidations dropped during shutdown");
+            synchronized (pendingLock) {
+                pendingKeys.clear();
+                publishing = false;
+            }
+        }
+    }
+
+    /**
+     * Sends the queued keys until none are left, in one pipeline of messages per round:
+     * keys queued while a round is in flight are sent together by the next one.
+     */
+    private void publishPending() {
+        while (true) {
+            List<String> keys;
+            synchronized (pendingLock) {
+                if (pendingKeys.isEmpty()) {
+                    publishing = false;
+                    return;
+                }
+                keys = new ArrayList<>(pendingKeys);
+                pendingKeys = new LinkedHashSet<>();
+            }
+            try (Jedis jedis = RedisManager.get().getResource(CHANNEL)) {
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_MESSAGE) {
+                        List<String> batch = keys.subList(from, Math.min(from + MAX_KEYS_PER_MESSAGE, keys.size()));
+                        pipeline.publish(CHANNEL, nodeId + "|" + String.join("\n", batch));
+                    }
+                    pipeline.sync();
+                }
+            } catch (Exception e) {
+                LOG.warning("Failed to publish " + keys.size() + " near cache invalidations: " + e.getMessage());
+            }
+        }
+    }
+
+    private void startRefresh() {
+        if (refreshing.compareAndSet(false, true)) {
+            RedisManager.get().getPubSubExecutor().submit(this::refreshLoop);
+        }
+    }
+
+    /**
+     * Re-reads the near cached types every second. The local ones are added back first, in
+     * case the set was cleared meanwhile.
+     */
+    private void refreshLoop() {
+        while (RedisManager.isInitialized() && RedisManager.get().isAlive()) {
+            try (Jedis jedis = RedisManager.get().getResource(TYPES_KEY)) {
+                Response<Set<String>> types;
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    if (!caches.isEmpty()) {
+                        pipeline.sadd(TYPES_KEY, caches.keySet().toArray(new String[0]));
+                    }
+                    types = pipeline.smembers(TYPES_KEY);
+                    pipeline.sync();
+                }
+                nearCachedTypes = types.get();
+            } catch (Exception e) {
+                if (!RedisManager.isInitialized() || !RedisManager.get().isAlive()) {
+                    return;
+                }
+                LOG.fine("Failed to read the near cached types: " + e.getMessage());
+            }
+            sleepQuietly(REFRESH_INTERVAL_MS);
+        }
+    }
+
+    private void subscribeLoop() {
+        long backoff = INITIAL_BACKOFF_MS;
+        while (RedisManager.isInitialized() && RedisManager.get().isAlive()) {
+            try (Jedis jedis = RedisManager.get().getResource()) {
+                JedisPubSub pubSub = new JedisPubSub() {
+                    @Override
+                    public void onSubscribe(String channel, int subscribedChannels) {
+                        caches.values().forEach(NearCache::clear);
+                        firstSubscription.countDown();
+                    }
+
+                    @Override
+                    public void onMessage(String channel, String message) {
+                        handleMessage(message);
+                    }
+                };
+                activeSubscription = pubSub;
+                jedis.subscribe(pubSub, CHANNEL);
+                backoff = INITIAL_BACKOFF_MS;
+            } catch (JedisException e) {
+                if (!RedisManager.isInitialized() || !RedisManager.get().isAlive()) {
+                    return;
+                }
+                LOG.warning("Near cache invalidation channel lost: " + e.getMessage()
+                        + " - retrying in " + backoff + "ms");
+                sleepQuietly(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            } catch (Exception e) {
+                LOG.warning("Near cache invalidation loop failed: " + e.getMessage());
+                sleepQuietly(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            } finally {
+                activeSubscription = null;
+                caches.values().forEach(NearCache::clear);
+            }
+        }
+    }
+
+    private void handleMessage(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || nodeId.equals(message.substring(0, separator))) {
+            return;
+        }
+        for (String key : message.substring(separator + 1).split("\n")) {
+            if (key.startsWith(CLEAR_PREFIX)) {
+                NearCache<?> cache = caches.get(key.substring(CLEAR_PREFIX.length()));
+                if (cache != null) {
+                    cache.clear();
+                }
+                continue;
+            }
+            int typeEnd = key.indexOf(':');
+            if (typeEnd < 0) {
+                continue;
+            }
+            NearCache<?> cache = caches.get(key.substring(0, typeEnd));
+            if (cache != null) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    public void shutdown() {
+        JedisPubSub pubSub = activeSubscription;
+        if (pubSub != null && pubSub.isSubscribed()) {
+            try {
+                pubSub.unsubscribe();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package sh.fyz.architect.cache;
 
+import redis.clients.jedis.HostAndPort;
+
+import java.util.ArrayList;
+import java.util.List;
+
 public class RedisCredentials {
 
+    private static final int DEFAULT_CLIENT_SIDE_CACHE_CONNECTIONS = 4;
+
     private final String host;
     private final String password;
     private final int port;
     private final int timeout;
     private final int maxConnections;
     private final int defaultTtlSeconds;
+    private final List<HostAndPort> clusterNodes = new ArrayList<>();
+    private final List<HostAndPort> replicas = new ArrayList<>();
+    private boolean cluster;
+    private int clientSideCacheSize;
+    private int clientSideCacheConnections;
 
     public RedisCredentials(String host, String password, int port, int timeout, int maxConnections) {
         this(host, password, port, timeout, maxConnections, 0);
@@ -46,6 +58,86 @@ public class RedisCredentials {
         return maxConnections;
     }
 
+    /**
+     * Connects to a Redis Cluster instead of a single server. {@code host:port} is used as
+     * the first seed node; {@code seedNodes} ({@code "host:port"}) are tried as well when
+     * discovering the cluster topology.
+     */
+    public RedisCredentials withCluster(String... seedNodes) {
+        this.cluster = true;
+        for (String node : seedNodes) {
+            clusterNodes.add(HostAndPort.from(node));
+        }
+        return this;
+    }
+
+    public boolean isCluster() {
+        return cluster;
+    }
+
+    /**
+     * Seed nodes of the cluster, starting with {@code host:port}.
+     */
+    public List<HostAndPort> getClusterNodes() {
+        List<HostAndPort> nodes = new ArrayList<>();
+        nodes.add(new HostAndPort(host, port));
+        nodes.addAll(clusterNodes);
+        return nodes;
+    }
+
+    /**
+     * Declares read replicas of the server ({@code "host:port"}). They are only read by the
+     * repositories that opt in with {@code readFromReplicas}; everything else, writes
+     * included, still goes to {@code host:port}. Not supported together with a cluster.
+     */
+    public RedisCredentials withReplicas(String... replicaNodes) {
+        for (String node : replicaNodes) {
+            replicas.add(HostAndPort.from(node));
+        }
+        return this;
+    }
+
+    public List<HostAndPort> getReplicas() {
+        return List.copyOf(replicas);
+    }
+
+    /**
+     * Opens RESP3 connections with server-assisted client-side caching, holding up to
+     * {@code maxEntries} entries locally. Only the types that opt in with
+     * {@code enableClientSideCache} read through them. Not supported together with a cluster.
+     */
+    public RedisCredentials withClientSideCache(int maxEntries) {
+        return withClientSideCache(maxEntries, DEFAULT_CLIENT_SIDE_CACHE_CONNECTIONS);
+    }
+
+    /**
+     * Same as {@link #withClientSideCache(int)}, spreading the keys over {@code connections}
+     * tracked connections, each with its own share of the entries. Reads of keys on the
+     * same connection are serialized, so more connections allow more concurrent reads.
+     */
+    public RedisCredentials withClientSideCache(int maxEntries, int connections) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        if (connections <= 0 || connections > maxEntries) {
+            throw new IllegalArgumentException("connections must be between 1 and maxEntries");
+        }
+        this.clientSideCacheSize = maxEntries;
+        this.clientSideCacheConnections = connections;
+        return this;
+    }
+
+    /**
+     * Size of the client-side cache, {@code 0} when it is disabled.
+     */
+    public int getClientSideCacheSize() {
+        return clientSideCacheSize;
+    }
+
+    public int getClientSideCacheConnections() {
+        return clientSideCacheConnections;
+    }
+
     /**
      * Default TTL applied to every key stored through {@link RedisManager#save}. {@code 0}
      * (default) means no expiry and the cache grows until explicit eviction. Set a positive
@@ -59,6 +151,6 @@ public class RedisCredentials {
     public String toString() {
         return "RedisCredentials{host='" + host + "', port=" + port +
                ", timeout=" + timeout + ", maxConnections=" + maxConnections +
-               ", defaultTtlSeconds=" + defaultTtlSeconds + "}";
+               ", defaultTtlSeconds=" + defaultTtlSeconds + ", cluster=" + cluster + ", replicas=" + replicas.size() + "}";
     }
 }
@@ -1,26 +1,42 @@
 package sh.fyz.architect.cache;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.SerializationFeature;
-import jakarta.persistence.Id;
-import jakarta.persistence.ManyToMany;
-import jakarta.persistence.ManyToOne;
-import jakarta.persistence.OneToMany;
-import jakarta.persistence.OneToOne;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import redis.clients.jedis.*;
+import redis.clients.jedis.csc.Cache;
+import redis.clients.jedis.csc.CacheConfig;
+import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.params.ZAddParams;
+import redis.clients.jedis.resps.Tuple;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.Pool;
+import sh.fyz.architect.entities.DatabaseAction;
+import sh.fyz.architect.repositories.GenericCachedRepository.DeadDeltas;
+import sh.fyz.architect.repositories.GenericCachedRepository.DeadLetter;
 import redis.clients.jedis.resps.ScanResult;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 public class RedisManager {
@@ -29,53 +45,216 @@ public class RedisManager {
     private static volatile RedisManager instance;
     private static final Object LOCK = new Object();
 
-    private static final TypeReference<Map<String, Object>> MAP_TYPE_REF = new TypeReference<>() {};
-
     private RedisQueueActionPool redisQueueActionPool;
     private final JedisPool jedisPool;
+    private final RedisClusterClient cluster;
+    private final List<Pool<Jedis>> replicaPools = new ArrayList<>();
+    private final AtomicLongArray replicaStaleness;
+    private final AtomicInteger replicaCursor = new AtomicInteger();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final Map<Class<?>, Duration> replicaTolerances = new ConcurrentHashMap<>();
+    private final List<RedisClient> trackedClients = new ArrayList<>();
+    private final AtomicLong trackedBypasses = new AtomicLong();
+    private final Set<Class<?>> clientCachedTypes = ConcurrentHashMap.newKeySet();
+    private final Set<String> localQueryCachedTypes = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> queryCachedTypes = Set.of();
+    private volatile boolean queryCachedTypesLoaded;
     private final ObjectMapper objectMapper;
     private final ExecutorService pubSubExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService backgroundExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final NearCacheInvalidator nearCacheInvalidator = new NearCacheInvalidator();
+
+    private static final int BUDGET_SAMPLE_SIZE = 16;
+    private static final int CLUSTER_MAX_ATTEMPTS = 5;
+    private static final long HEARTBEAT_INTERVAL_MS = 100;
+    private static final Duration TRACKED_READ_MAX_WAIT = Duration.ofMillis(20);
+    private static final long QUERY_CACHED_TYPES_REFRESH_MS = 1_000L;
 
-    private static final ConcurrentHashMap<Class<?>, Map<String, Field>> FIELD_CACHE = new ConcurrentHashMap<>();
+    private static final String PRUNE_SCRIPT =
+            "if redis.call('EXISTS', KEYS[2]) == 0 then return redis.call('SREM', KEYS[1], ARGV[1]) end return 0";
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0";
+    private static final String HEARTBEAT_SCRIPT =
+            "local t = redis.call('TIME') local ms = string.format('%.0f', t[1] * 1000 + math.floor(t[2] / 1000)) "
+            + "redis.call('SET', KEYS[1], ms) return ms";
+    // Moves the pending deltas of the given ids into their in-flight hashes, then returns the
+    // in-flight hashes as {id, {field, delta, ...}, ...}.
+    // KEYS: dirty ids, in-flight ids, then the delta and in-flight keys of each id;
+    // ARGV: the ids. Ids marked dirty meanwhile stay dirty for the next drain.
+    private static final String DRAIN_DELTAS_SCRIPT =
+            "local out = {} "
+            + "for i = 1, #ARGV do "
+            + "local id, delta, inflight = ARGV[i], KEYS[2 * i + 1], KEYS[2 * i + 2] "
+            + "local pending = redis.call('HGETALL', delta) "
+            + "for j = 1, #pending, 2 do redis.call('HINCRBYFLOAT', inflight, pending[j], pending[j + 1]) end "
+            + "redis.call('DEL', delta) redis.call('SREM', KEYS[1], id) "
+            + "local deltas = redis.call('HGETALL', inflight) "
+            + "if #deltas == 0 then redis.call('SREM', KEYS[2], id) "
+            + "else redis.call('SADD', KEYS[2], id) table.insert(out, id) table.insert(out, deltas) end "
+            + "end "
+            + "return out";
+    private static final int DRAIN_DELTAS_CHUNK_SIZE = 500;
+    // Writes each entry of a re-warmed chunk unless it already holds that value or its id has
+    // counter deltas not yet in the database, registers it and returns the ids written.
+    // KEYS: dirty ids, in-flight ids, registry, version, then one entry key per id;
+    // ARGV: TTL in seconds (0 for none), 1 to bump the version when anything is written,
+    // then id and value per entry.
+    private static final String REPLACE_MEMBERS_SCRIPT =
+            "local ttl = tonumber(ARGV[1]) local out = {} "
+            + "for i = 1, #KEYS - 4 do "
+            + "local id, value = ARGV[2 * i + 1], ARGV[2 * i + 2] "
+            + "if redis.call('SISMEMBER', KEYS[1], id) == 0 and redis.call('SISMEMBER', KEYS[2], id) == 0 "
+            + "and redis.call('GET', KEYS[4 + i]) ~= value then "
+            + "if ttl > 0 then redis.call('SET', KEYS[4 + i], value, 'EX', ttl) else redis.call('SET', KEYS[4 + i], value) end "
+            + "redis.call('SADD', KEYS[3], id) table.insert(out, id) "
+            + "end "
+            + "end "
+            + "if #out > 0 and ARGV[2] == '1' then redis.call('INCR', KEYS[4]) end "
+            + "return out";
+    private static final int MAX_INCREMENT_RETRIES = 10;
+    private static final int MIN_PARALLEL_DECODE_CHUNK = 1000;
+
+    private final CacheCodec defaultCodec;
+    private final Map<Class<?>, CacheCodec> codecs = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ExpiryPolicy> expiryPolicies = new ConcurrentHashMap<>();
+    private final Map<Class<?>, String> namespaces = new ConcurrentHashMap<>();
+    private final Map<Class<?>, CacheBudget> budgets = new ConcurrentHashMap<>();
+    private final ExpiryPolicy defaultExpiry;
 
     private final boolean isReceiver;
     private volatile boolean isAlive = true;
     private final String keyPrefix;
     private final int defaultTtlSeconds;
 
-    private RedisManager(String host, String password, int port, int timeout, int maxConnections,
-                          boolean receiver, int defaultTtlSeconds) {
-        JedisPoolConfig config = new JedisPoolConfig();
-        config.setMaxTotal(maxConnections);
-        config.setMaxIdle(maxConnections / 2);
-        config.setMinIdle(1);
-        config.setTestOnBorrow(true);
-        config.setTimeBetweenEvictionRuns(java.time.Duration.ofSeconds(30));
-        this.jedisPool = new JedisPool(config, host, port, timeout, password);
+    private RedisManager(RedisCredentials credentials, boolean receiver) {
+        int maxConnections = credentials.getMaxConnections();
+        int defaultTtlSeconds = credentials.getDefaultTtlSeconds();
+        if (credentials.isCluster()) {
+            ConnectionPoolConfig config = new ConnectionPoolConfig();
+            config.setMaxTotal(maxConnections);
+            config.setMaxIdle(maxConnections / 2);
+            config.setMinIdle(1);
+            config.setTestOnBorrow(true);
+            config.setTimeBetweenEvictionRuns(java.time.Duration.ofSeconds(30));
+            JedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+                .password(credentials.getPassword())
+                .timeoutMillis(credentials.getTimeout())
+                .build();
+            if (!credentials.getReplicas().isEmpty()) {
+                throw new IllegalArgumentException("Replica endpoints are not supported in cluster mode");
+            }
+            if (credentials.getClientSideCacheSize() > 0) {
+                throw new IllegalArgumentException("Client-side caching is not supported in cluster mode");
+            }
+            this.cluster = RedisClusterClient.builder()
+                .nodes(new HashSet<>(credentials.getClusterNodes()))
+                .clientConfig(clientConfig)
+                .poolConfig(config)
+                .maxAttempts(CLUSTER_MAX_ATTEMPTS)
+                .maxTotalRetriesDuration(Duration.ofMillis((long) credentials.getTimeout() * CLUSTER_MAX_ATTEMPTS))
+                .build();
+            this.jedisPool = null;
+        } else {
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(maxConnections);
+            config.setMaxIdle(maxConnections / 2);
+            config.setMinIdle(1);
+            config.setTestOnBorrow(true);
+            config.setTimeBetweenEvictionRuns(java.time.Duration.ofSeconds(30));
+            this.jedisPool = new JedisPool(config, credentials.getHost(), credentials.getPort(),
+                credentials.getTimeout(), credentials.getPassword());
+            this.cluster = null;
+            for (HostAndPort replica : credentials.getReplicas()) {
+                replicaPools.add(createReplicaPool(config, replica, credentials));
+            }
+        }
+        for (int i = 0; i < credentials.getClientSideCacheConnections(); i++) {
+            trackedClients.add(createTrackedClient(credentials,
+                Math.max(1, credentials.getClientSideCacheSize() / credentials.getClientSideCacheConnections())));
+        }
+        this.replicaStaleness = new AtomicLongArray(replicaPools.size());
+        for (int i = 0; i < replicaPools.size(); i++) {
+            replicaStaleness.set(i, Long.MAX_VALUE);
+        }
         this.keyPrefix = "architect:";
         this.defaultTtlSeconds = defaultTtlSeconds;
-        if (receiver) {
-            clearArchitectKeys();
-        }
+        this.defaultExpiry = defaultTtlSeconds > 0 ? new ExpiryPolicy(defaultTtlSeconds, false) : ExpiryPolicy.none();
         this.objectMapper = new ObjectMapper();
         this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         this.objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        this.defaultCodec = new JsonCacheCodec(objectMapper);
         this.isReceiver = receiver;
+        if (!replicaPools.isEmpty()) {
+            backgroundExecutor.submit(this::monitorReplicas);
+        }
+    }
+
+    // Replica reads need Jedis connections (scans, pipelines), which only JedisPool hands out.
+    @SuppressWarnings("deprecation")
+    private static Pool<Jedis> createReplicaPool(GenericObjectPoolConfig<Jedis> config, HostAndPort replica,
+                                                 RedisCredentials credentials) {
+        return new JedisPool(config, replica.getHost(), replica.getPort(), credentials.getTimeout(),
+            credentials.getPassword());
+    }
+
+    /**
+     * Builds one of the clients used for client-side cached reads: RESP3, so that Redis
+     * pushes key invalidations on the connection itself, and a single connection with its
+     * own cache, so that the invalidations it received are always processed before the next
+     * read of its keys. A read waits at most {@link #TRACKED_READ_MAX_WAIT} for the
+     * connection.
+     */
+    private static RedisClient createTrackedClient(RedisCredentials credentials, int maxEntries) {
+        JedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+            .password(credentials.getPassword())
+            .timeoutMillis(credentials.getTimeout())
+            .protocol(RedisProtocol.RESP3)
+            .build();
+        ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxTotal(1);
+        poolConfig.setMaxIdle(1);
+        poolConfig.setMaxWait(TRACKED_READ_MAX_WAIT);
+        CacheConfig cacheConfig = CacheConfig.builder().maxSize(maxEntries).build();
+        return RedisClient.builder()
+            .hostAndPort(credentials.getHost(), credentials.getPort())
+            .clientConfig(clientConfig)
+            .cacheConfig(cacheConfig)
+            .poolConfig(poolConfig)
+            .build();
     }
 
-    private void clearArchitectKeys() {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String cursor = ScanParams.SCAN_POINTER_START;
-            ScanParams params = new ScanParams().match(keyPrefix + "*").count(1000);
-            do {
-                ScanResult<String> scan = jedis.scan(cursor, params);
-                List<String> keys = scan.getResult();
-                if (!keys.isEmpty()) {
-                    jedis.del(keys.toArray(new String[0]));
+    /**
+     * Removes every Architect key from Redis. Called on receiver start when warm restarts
+     * are disabled; otherwise the cache is kept and only outdated namespaces are dropped,
+     * see {@link #claimNamespace}.
+     */
+    public void clearArchitectKeys() {
+        onEachPrimary(jedis -> {
+            unlinkMatching(jedis, keyPrefix + "*");
+            return true;
+        });
+    }
+
+    /**
+     * Unlinks the keys of one node that match {@code pattern}. Keys are unlinked one by one
+     * in a pipeline, as keys of different hash slots cannot share a command in a cluster.
+     */
+    private void unlinkMatching(Jedis jedis, String pattern) {
+        String cursor = ScanParams.SCAN_POINTER_START;
+        ScanParams params = new ScanParams().match(pattern).count(1000);
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            List<String> keys = scan.getResult();
+            if (!keys.isEmpty()) {
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    for (String key : keys) {
+                        pipeline.unlink(key);
+                    }
+                    pipeline.sync();
                 }
-                cursor = scan.getCursor();
-            } while (!"0".equals(cursor));
-        }
+            }
+            cursor = scan.getCursor();
+        } while (!"0".equals(cursor));
     }
 
     private void createRedisPool() {
@@ -86,10 +265,77 @@ public class RedisManager {
         return isReceiver;
     }
 
+    /**
+     * The connection pool of the single Redis server, or {@code null} in cluster mode; prefer
+     * {@link #getResource(String)}, which works in both.
+     */
     public JedisPool getJedisPool() {
         return jedisPool;
     }
 
+    public boolean isCluster() {
+        return cluster != null;
+    }
+
+    /**
+     * Returns a connection to the node serving {@code key}: the single server, or in cluster
+     * mode the owner of the key's hash slot. All the keys of a type carry the hash tag of its
+     * {@link #namespace}, so the namespace itself or any of them routes to the same node.
+     */
+    public Jedis getResource(String key) {
+        if (cluster == null) {
+            return jedisPool.getResource();
+        }
+        return new Jedis(cluster.getConnectionFromSlot(JedisClusterCRC16.getSlot(key)));
+    }
+
+    /**
+     * Returns a connection for commands not tied to a type, such as pub/sub.
+     */
+    public Jedis getResource() {
+        return getResource(keyPrefix);
+    }
+
+    /**
+     * Runs {@code task} on every primary node in parallel, or on the single server, and
+     * returns the results. Used by the commands that walk the whole keyspace.
+     */
+    private <R> List<R> onEachPrimary(Function<Jedis, R> task) {
+        if (cluster == null) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                return Collections.singletonList(task.apply(jedis));
+            }
+        }
+        List<ConnectionPool> primaries = new ArrayList<>();
+        for (ConnectionPool pool : cluster.getClusterNodes().values()) {
+            try (Jedis jedis = new Jedis(pool.getResource())) {
+                if (jedis.info("replication").contains("role:master")) {
+                    primaries.add(pool);
+                }
+            }
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<R>> futures = new ArrayList<>(primaries.size());
+            for (ConnectionPool pool : primaries) {
+                futures.add(executor.submit(() -> {
+                    try (Jedis jedis = new Jedis(pool.getResource())) {
+                        return task.apply(jedis);
+                    }
+                }));
+            }
+            List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning Redis nodes", e);
+        }
+    }
+
     public ExecutorService getPubSubExecutor() {
         return pubSubExecutor;
     }
@@ -98,6 +344,10 @@ public class RedisManager {
         return redisQueueActionPool;
     }
 
+    public NearCacheInvalidator getNearCacheInvalidator() {
+        return nearCacheInvalidator;
+    }
+
     public static void initialize(String host, String password, int port, int timeout, int maxConnections,
                                    boolean receiver) {
         initialize(host, password, port, timeout, maxConnections, receiver, 0);
@@ -105,9 +355,13 @@ public class RedisManager {
 
     public static void initialize(String host, String password, int port, int timeout, int maxConnections,
                                    boolean receiver, int defaultTtlSeconds) {
+        initialize(new RedisCredentials(host, password, port, timeout, maxConnections, defaultTtlSeconds), receiver);
+    }
+
+    public static void initialize(RedisCredentials credentials, boolean receiver) {
         synchronized (LOCK) {
             if (instance == null) {
-                instance = new RedisManager(host, password, port, timeout, maxConnections, receiver, defaultTtlSeconds);
+                instance = new RedisManager(credentials, receiver);
                 instance.createRedisPool();
             } else {
                 throw new IllegalStateException("RedisManager is already initialized!");
@@ -144,13 +398,83 @@ public class RedisManager {
         return defaultTtlSeconds;
     }
 
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    /**
+     * Sets the codec used to store entities of {@code type}. Entries already written with
+     * another codec are still read as long as that codec is the default JSON one; anything
+     * else is treated as a cache miss and reloaded from the database.
+     */
+    public void setCodec(Class<?> type, CacheCodec codec) {
+        if (codec == null) {
+            codecs.remove(type);
+        } else {
+            codecs.put(type, codec);
+        }
+    }
+
+    public CacheCodec getCodec(Class<?> type) {
+        return codecs.getOrDefault(type, defaultCodec);
+    }
+
+    public CacheCodec getDefaultCodec() {
+        return defaultCodec;
+    }
+
+    /**
+     * Sets the expiry of the cached entries of {@code type}, overriding its {@link CacheTtl}
+     * annotation and the default TTL. Passing {@code null} removes the override.
+     */
+    public void setExpiryPolicy(Class<?> type, ExpiryPolicy policy) {
+        if (policy == null) {
+            expiryPolicies.remove(type);
+        } else {
+            expiryPolicies.put(type, policy);
+        }
+    }
+
+    public ExpiryPolicy getExpiryPolicy(Class<?> type) {
+        ExpiryPolicy policy = expiryPolicies.get(type);
+        if (policy != null) {
+            return policy;
+        }
+        CacheTtl annotation = type.getAnnotation(CacheTtl.class);
+        return annotation != null ? ExpiryPolicy.of(annotation) : defaultExpiry;
+    }
+
+    /**
+     * Bounds the Redis footprint of {@code type}, overriding its {@link CacheLimit}
+     * annotation. Passing {@code null} removes the override.
+     */
+    public void setCacheBudget(Class<?> type, CacheBudget budget) {
+        if (budget == null) {
+            budgets.remove(type);
+        } else {
+            budgets.put(type, budget);
+        }
+    }
+
+    /**
+     * Returns the budget of {@code type}, or {@code null} when its footprint is unbounded.
+     */
+    public CacheBudget getCacheBudget(Class<?> type) {
+        CacheBudget budget = budgets.get(type);
+        if (budget != null) {
+            return budget;
+        }
+        CacheLimit annotation = type.getAnnotation(CacheLimit.class);
+        return annotation != null ? CacheBudget.of(annotation) : null;
+    }
+
     public <T> void save(String key, T entity) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            Map<String, Object> processedEntity = prepareForSave(entity);
-            String prefixedKey = keyPrefix + key;
-            String value = objectMapper.writeValueAsString(processedEntity);
-            if (defaultTtlSeconds > 0) {
-                jedis.setex(prefixedKey, defaultTtlSeconds, value);
+        try (Jedis jedis = getResource(key)) {
+            byte[] prefixedKey = rawKey(key);
+            byte[] value = getCodec(entity.getClass()).encode(entity);
+            ExpiryPolicy expiry = getExpiryPolicy(entity.getClass());
+            if (expiry.expires()) {
+                jedis.set(prefixedKey, value, SetParams.setParams().ex(expiry.ttlSeconds()));
             } else {
                 jedis.set(prefixedKey, value);
             }
@@ -160,224 +484,1552 @@ public class RedisManager {
     }
 
     public <T> T find(String key, Class<T> type) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            String data = jedis.get(keyPrefix + key);
-            if (data != null) {
-                Map<String, Object> rawData = objectMapper.readValue(data, MAP_TYPE_REF);
-                return reconstructEntity(rawData, type);
-            }
-            return null;
+        byte[] data;
+        try {
+            data = usesClientSideCache(type)
+                ? readTracked(key, type)
+                : readRaw(List.of(key), type).get(0);
         } catch (Exception e) {
             throw new RuntimeException("Failed to find entity in Redis: " + e.getMessage(), e);
         }
+        if (data == null) {
+            return null;
+        }
+        List<T> found = materialize(List.of(key), Collections.singletonList(data), type);
+        return found.isEmpty() ? null : found.get(0);
     }
 
+    /**
+     * Reads every entry whose key matches {@code pattern}, scanning the nodes of a cluster in
+     * parallel.
+     */
     public <T> List<T> findAll(String pattern, Class<T> type) {
-        try (Jedis jedis = jedisPool.getResource()) {
-            List<T> result = new ArrayList<>();
-            String cursor = ScanParams.SCAN_POINTER_START;
-            ScanParams params = new ScanParams().match(keyPrefix + pattern).count(1000);
-            do {
-                ScanResult<String> scan = jedis.scan(cursor, params);
-                List<String> keys = scan.getResult();
-                if (!keys.isEmpty()) {
-                    try (Pipeline pipeline = jedis.pipelined()) {
-                        List<Response<String>> responses = new ArrayList<>(keys.size());
-                        for (String key : keys) {
-                            responses.add(pipeline.get(key));
-                        }
-                        pipeline.sync();
-                        for (Response<String> resp : responses) {
-                            String data = resp.get();
-                            if (data != null) {
-                                try {
-                                    Map<String, Object> rawData = objectMapper.readValue(data, MAP_TYPE_REF);
-                                    T entity = reconstructEntity(rawData, type);
-                                    if (entity != null) result.add(entity);
-                                } catch (Exception e) {
-                                    LOG.warning("Failed to deserialize cached entity: " + e.getMessage());
-                                }
-                            }
-                        }
-                    }
+        List<String> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        try {
+            ExpiryPolicy expiry = getExpiryPolicy(type);
+            Pool<Jedis> replica = pickReplica(type);
+            List<Map.Entry<List<String>, List<byte[]>>> results;
+            if (replica != null) {
+                try (Jedis jedis = replica.getResource()) {
+                    results = List.of(scanEntries(jedis, pattern, expiry));
                 }
-                cursor = scan.getCursor();
-            } while (!"0".equals(cursor));
-            return result;
+                replicaReads.incrementAndGet();
+            } else {
+                results = onEachPrimary(jedis -> scanEntries(jedis, pattern, expiry));
+            }
+            for (Map.Entry<List<String>, List<byte[]>> scanned : results) {
+                keys.addAll(scanned.getKey());
+                values.addAll(scanned.getValue());
+            }
         } catch (Exception e) {
             throw new RuntimeException("Failed to find all entities in Redis: " + e.getMessage(), e);
         }
+        return materialize(keys, values, type);
+    }
+
+    private Map.Entry<List<String>, List<byte[]>> scanEntries(Jedis jedis, String pattern, ExpiryPolicy expiry) {
+        List<String> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        ScanParams params = new ScanParams().match(keyPrefix + pattern).count(1000);
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            List<String> prefixedKeys = scan.getResult();
+            if (!prefixedKeys.isEmpty()) {
+                for (String prefixedKey : prefixedKeys) {
+                    keys.add(prefixedKey.substring(keyPrefix.length()));
+                }
+                values.addAll(getRaw(jedis, prefixedKeys, expiry, null));
+            }
+            cursor = scan.getCursor();
+        } while (!"0".equals(cursor));
+        return Map.entry(keys, values);
+    }
+
+    /**
+     * Fetches the given keys (without the {@code architect:} prefix), all of one type, in
+     * one pipelined round trip. Missing keys are skipped, so the result may be shorter than
+     * {@code keys}.
+     */
+    public <T> List<T> findMany(Collection<String> keys, Class<T> type) {
+        return findMany(keys, type, null, 0);
+    }
+
+    /**
+     * Same as {@link #findMany(Collection, Class)}, decoding and resolving relations on
+     * {@code pool} when at least {@code parallelThreshold} entries are found.
+     */
+    public <T> List<T> findMany(Collection<String> keys, Class<T> type, ForkJoinPool pool, int parallelThreshold) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> orderedKeys = new ArrayList<>(keys);
+        List<byte[]> values;
+        try {
+            values = readRaw(orderedKeys, type);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to find entities in Redis: " + e.getMessage(), e);
+        }
+        return materialize(orderedKeys, values, type, pool, parallelThreshold);
+    }
+
+    /**
+     * Returns {@code true} as soon as one key matches the pattern. Used to tell an empty
+     * cache apart from a query that legitimately matched nothing.
+     */
+    public boolean hasAny(String pattern) {
+        try {
+            return onEachPrimary(jedis -> {
+                String cursor = ScanParams.SCAN_POINTER_START;
+                ScanParams params = new ScanParams().match(keyPrefix + pattern).count(1000);
+                do {
+                    ScanResult<String> scan = jedis.scan(cursor, params);
+                    if (!scan.getResult().isEmpty()) {
+                        return true;
+                    }
+                    cursor = scan.getCursor();
+                } while (!"0".equals(cursor));
+                return false;
+            }).contains(true);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to scan Redis keys: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the entries under {@code keys}, all of one type. With replica reads enabled for
+     * the type, they come from a replica within its staleness tolerance; entries that replica
+     * does not have yet are read again from the primary, so a lagging replica never turns a
+     * cached entry into a database load.
+     */
+    private List<byte[]> readRaw(List<String> keys, Class<?> type) {
+        List<String> prefixedKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            prefixedKeys.add(keyPrefix + key);
+        }
+        ExpiryPolicy expiry = getExpiryPolicy(type);
+        Pool<Jedis> replica = pickReplica(type);
+        List<byte[]> values = null;
+        if (replica != null) {
+            try (Jedis jedis = replica.getResource()) {
+                values = new ArrayList<>(getRaw(jedis, prefixedKeys, expiry, null));
+                replicaReads.incrementAndGet();
+            } catch (Exception e) {
+                LOG.fine("Replica read failed, reading from the primary: " + e.getMessage());
+            }
+        }
+        try (Jedis jedis = getResource(keys.get(0))) {
+            if (values == null) {
+                return getRaw(jedis, prefixedKeys, expiry, trackedNamespace(type));
+            }
+            List<Integer> missing = new ArrayList<>();
+            List<String> missingKeys = new ArrayList<>();
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) == null) {
+                    missing.add(i);
+                    missingKeys.add(prefixedKeys.get(i));
+                }
+            }
+            if (!missing.isEmpty()) {
+                List<byte[]> fromPrimary = getRaw(jedis, missingKeys, expiry, null);
+                for (int i = 0; i < missing.size(); i++) {
+                    values.set(missing.get(i), fromPrimary.get(i));
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Reads the keys in one pipeline. With a sliding expiry, each GET is followed by an
+     * EXPIRE in the same pipeline, so reading an entry keeps it alive. When
+     * {@code trackedNamespace} is set, the read also refreshes the access time of the ids
+     * already tracked in that namespace (ZADD XX), which drives budget eviction.
+     */
+    private List<byte[]> getRaw(Jedis jedis, List<String> prefixedKeys, ExpiryPolicy expiry, String trackedNamespace) {
+        List<byte[]> values = new ArrayList<>(prefixedKeys.size());
+        try (Pipeline pipeline = jedis.pipelined()) {
+            List<Response<byte[]>> responses = new ArrayList<>(prefixedKeys.size());
+            String idPrefix = trackedNamespace == null ? null : keyPrefix + trackedNamespace + ":";
+            long now = System.currentTimeMillis();
+            for (String key : prefixedKeys) {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                responses.add(pipeline.get(rawKey));
+                if (expiry.sliding()) {
+                    pipeline.expire(rawKey, expiry.ttlSeconds());
+                }
+                if (idPrefix != null && key.startsWith(idPrefix)) {
+                    pipeline.zadd(accessKey(trackedNamespace), now, key.substring(idPrefix.length()), ZAddParams.zAddParams().xx());
+                }
+            }
+            pipeline.sync();
+            for (Response<byte[]> resp : responses) {
+                values.add(resp.get());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Decodes on {@code pool} in chunks, each with its own {@link RelationLoader}, once there
+     * are at least {@code parallelThreshold} values; sequentially otherwise. A related entity
+     * referenced from several chunks is then fetched, and instantiated, once per chunk.
+     */
+    private <T> List<T> materialize(List<String> keys, List<byte[]> values, Class<T> type,
+                                    ForkJoinPool pool, int parallelThreshold) {
+        if (pool == null || parallelThreshold <= 0 || values.size() < parallelThreshold) {
+            return materialize(keys, values, type);
+        }
+        int chunkSize = Math.max(MIN_PARALLEL_DECODE_CHUNK, values.size() / (pool.getParallelism() * 4) + 1);
+        List<ForkJoinTask<List<T>>> chunks = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, values.size());
+            List<String> chunkKeys = keys.subList(from, to);
+            List<byte[]> chunkValues = values.subList(from, to);
+            chunks.add(pool.submit(() -> materialize(chunkKeys, chunkValues, type)));
+        }
+        List<T> result = new ArrayList<>(values.size());
+        for (ForkJoinTask<List<T>> chunk : chunks) {
+            result.addAll(chunk.join());
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a batch of entries read under {@code keys} (null values are skipped), then
+     * resolves the relations of the whole batch at once through a {@link RelationLoader}.
+     */
+    private <T> List<T> materialize(List<String> keys, List<byte[]> values, Class<T> type) {
+        RelationLoader loader = new RelationLoader(this);
+        List<T> result = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            byte[] data = values.get(i);
+            if (data == null) continue;
+            T entity = decodeQuietly(data, type, loader);
+            if (entity != null) {
+                loader.register(keys.get(i), entity);
+                result.add(entity);
+            }
+        }
+        try {
+            loader.resolve();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to resolve relations of cached " + type.getSimpleName() + ": " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Decodes with the codec registered for {@code type}, falling back to the default JSON
+     * codec for entries written before the codec was changed. Data neither can read, or that
+     * fails to decode, is reported as a miss.
+     */
+    <T> T decodeQuietly(byte[] data, Class<T> type, CacheCodec.RelationResolver resolver) {
+        CacheCodec codec = getCodec(type);
+        if (!codec.canDecode(data)) {
+            if (codec == defaultCodec || !defaultCodec.canDecode(data)) {
+                return null;
+            }
+            codec = defaultCodec;
+        }
+        try {
+            return codec.decode(data, type, resolver);
+        } catch (Exception e) {
+            LOG.warning("Failed to deserialize cached " + type.getSimpleName() + ": " + e.getMessage());
+            return null;
+        }
     }
 
     public void delete(String key) {
-        try (Jedis jedis = jedisPool.getResource()) {
+        try (Jedis jedis = getResource(key)) {
             jedis.del(keyPrefix + key);
         } catch (Exception e) {
             throw new RuntimeException("Failed to delete key from Redis: " + e.getMessage(), e);
         }
     }
 
-    private Map<String, Field> getCachedFields(Class<?> clazz) {
-        return FIELD_CACHE.computeIfAbsent(clazz, c -> {
-            Map<String, Field> fieldMap = new LinkedHashMap<>();
-            Class<?> current = c;
-            while (current != null && current != Object.class) {
-                for (Field field : current.getDeclaredFields()) {
-                    field.setAccessible(true);
-                    fieldMap.putIfAbsent(field.getName(), field);
+    // --- TYPE REGISTRIES ---
+    // Each cached type keeps the set of its cached ids under architect:~ids:<Type>, so that
+    // reading a whole type walks its own members instead of SCANning the entire keyspace.
+    // Ids whose entry is gone (expired or evicted) are pruned lazily when they are read.
+
+    public String getRegistryKey(String typeName) {
+        return keyPrefix + "~ids:" + typeName;
+    }
+
+    /**
+     * Saves {@code entity} under {@code typeName:id}, records the id in the type registry and
+     * drops any tombstone of that id, in a single round trip.
+     */
+    public <T> void saveMember(String typeName, Object id, T entity) {
+        saveMember(typeName, id, entity, true);
+    }
+
+    /**
+     * Same as {@link #saveMember(String, Object, Object)}. {@code changed} is unset for values
+     * freshly loaded from the database: they keep the pending counter deltas of the entry
+     * and the cached query results of the type.
+     */
+    public <T> void saveMember(String typeName, Object id, T entity, boolean changed) {
+        saveMember(typeName, id, entity, changed, null);
+    }
+
+    /**
+     * Same as {@link #saveMember(String, Object, Object, boolean)}, updating the entity's
+     * entries in {@code index} (when not null) in the same round trip.
+     */
+    public <T> void saveMember(String typeName, Object id, T entity, boolean changed, EntityIndex index) {
+        Response<Map<String, String>> declared = null;
+        try (Jedis jedis = getResource(typeName)) {
+            byte[] prefixedKey = rawKey(typeName + ":" + id);
+            byte[] value = getCodec(entity.getClass()).encode(entity);
+            ExpiryPolicy expiry = getExpiryPolicy(entity.getClass());
+            try (Pipeline pipeline = jedis.pipelined()) {
+                if (expiry.expires()) {
+                    pipeline.set(prefixedKey, value, SetParams.setParams().ex(expiry.ttlSeconds()));
+                } else {
+                    pipeline.set(prefixedKey, value);
+                }
+                pipeline.sadd(getRegistryKey(typeName), String.valueOf(id));
+                pipeline.del(tombstoneKey(typeName + ":" + id));
+                if (changed) {
+                    pipeline.del(deltaKey(typeName, id), inflightKey(typeName, id));
+                    if (cachesQueries(typeName)) {
+                        pipeline.incr(queryVersionKey(typeName));
+                    }
+                }
+                if (getCacheBudget(entity.getClass()) != null) {
+                    pipeline.zadd(accessKey(typeName), System.currentTimeMillis(), String.valueOf(id));
                 }
-                current = current.getSuperclass();
+                if (index != null) {
+                    declared = index.index(pipeline, id, entity);
+                }
+                pipeline.sync();
             }
-            return Collections.unmodifiableMap(fieldMap);
-        });
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save entity to Redis: " + e.getMessage(), e);
+        }
+        if (declared != null) {
+            index.sync(declared, id, entity);
+        }
+    }
+
+    public void deleteMember(String typeName, Object id) {
+        deleteMember(typeName, id, true);
+    }
+
+    /**
+     * Removes {@code typeName:id} from the cache. {@code changed} is unset for evictions,
+     * which leave the cached query results of the type valid.
+     */
+    public void deleteMember(String typeName, Object id, boolean changed) {
+        deleteMember(typeName, id, changed, null);
     }
 
-    private <T> Map<String, Object> prepareForSave(T entity) throws IllegalAccessException {
-        Map<String, Object> jsonMap = new HashMap<>();
-        Map<String, Field> fields = getCachedFields(entity.getClass());
+    /**
+     * Same as {@link #deleteMember(String, Object, boolean)}, removing the entity's entries
+     * from {@code index} (when not null) in the same round trip.
+     */
+    public void deleteMember(String typeName, Object id, boolean changed, EntityIndex index) {
+        Response<Map<String, String>> declared = null;
+        try (Jedis jedis = getResource(typeName)) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                pipeline.del(keyPrefix + typeName + ":" + id);
+                pipeline.srem(getRegistryKey(typeName), String.valueOf(id));
+                pipeline.zrem(accessKey(typeName), String.valueOf(id));
+                if (changed && cachesQueries(typeName)) {
+                    pipeline.incr(queryVersionKey(typeName));
+                }
+                if (index != null) {
+                    declared = index.remove(pipeline, id);
+                }
+                pipeline.sync();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to delete key from Redis: " + e.getMessage(), e);
+        }
+        if (declared != null) {
+            index.sync(declared, id, null);
+        }
+    }
 
-        for (Map.Entry<String, Field> entry : fields.entrySet()) {
-            Field field = entry.getValue();
-            Object value = field.get(entity);
+    // --- COUNTERS ---
+    // incrementMember() changes a numeric field of a cached entry in place and adds the
+    // change to architect:~delta:<Type>:<id>, listing the id in architect:~deltas:<Type>.
+    // The receiver moves those deltas to architect:~inflight:<Type>:<id> when it flushes and
+    // deletes them once they are in the database. Saving a changed entry drops its deltas:
+    // the saved value already contains them. Evicting it keeps them, as they are still owed to
+    // the database (deltas of a deleted entity just update no row).
 
-            if (value != null) {
-                if (field.isAnnotationPresent(ManyToOne.class) || field.isAnnotationPresent(OneToOne.class)) {
-                    Field idField = getIdField(value.getClass());
-                    if (idField != null) {
-                        jsonMap.put(field.getName() + "_id", idField.get(value));
+    /**
+     * Adds {@code delta} to {@code field} of the cached entry {@code typeName:id} and records
+     * the delta for the database, atomically: the entry is WATCHed and the transaction
+     * retried when another node writes it meanwhile. The entry keeps its TTL, and its entries
+     * in {@code index} (when not null) are updated in the same transaction. Returns the
+     * updated entity, or {@code null} when the entry is not cached.
+     */
+    public <T> T incrementMember(String typeName, Object id, Class<T> type, EntitySchema.Property field, Number delta,
+                                 EntityIndex index) {
+        String key = typeName + ":" + id;
+        byte[] prefixedKey = rawKey(key);
+        Class<?> fieldType = field.field().getType();
+        boolean floating = isFloating(fieldType);
+        try (Jedis jedis = getResource(typeName)) {
+            for (int attempt = 0; attempt < MAX_INCREMENT_RETRIES; attempt++) {
+                jedis.watch(prefixedKey);
+                byte[] data = jedis.get(prefixedKey);
+                List<T> decoded = data != null
+                    ? materialize(List.of(key), Collections.singletonList(data), type)
+                    : List.of();
+                if (decoded.isEmpty()) {
+                    jedis.unwatch();
+                    return null;
+                }
+                T entity = decoded.get(0);
+                field.set(entity, add(fieldType, (Number) field.get(entity), delta));
+                byte[] value = getCodec(type).encode(entity);
+
+                Transaction transaction = jedis.multi();
+                transaction.set(prefixedKey, value, SetParams.setParams().keepTtl());
+                if (floating) {
+                    transaction.hincrByFloat(deltaKey(typeName, id), field.name(), delta.doubleValue());
+                } else {
+                    transaction.hincrBy(deltaKey(typeName, id), field.name(), delta.longValue());
+                }
+                transaction.sadd(dirtyDeltasKey(typeName), String.valueOf(id));
+                if (cachesQueries(typeName)) {
+                    transaction.incr(queryVersionKey(typeName));
+                }
+                Response<Map<String, String>> declared = index != null ? index.index(transaction, id, entity) : null;
+                if (transaction.exec() != null) {
+                    if (declared != null) {
+                        index.sync(declared, id, entity);
                     }
-                } else if (field.isAnnotationPresent(OneToMany.class) || field.isAnnotationPresent(ManyToMany.class)) {
-                    if (value instanceof Collection) {
-                        List<Object> ids = new ArrayList<>();
-                        for (Object item : (Collection<?>) value) {
-                            if (item != null) {
-                                Field idField = getIdField(item.getClass());
-                                if (idField != null) {
-                                    ids.add(idField.get(item));
-                                }
-                            }
-                        }
-                        if (!ids.isEmpty()) {
-                            jsonMap.put(field.getName() + "_ids", ids);
-                        }
+                    return entity;
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to increment " + key + "." + field.name() + " in Redis: " + e.getMessage(), e);
+        }
+        throw new IllegalStateException("Gave up incrementing " + key + "." + field.name() + " after concurrent updates");
+    }
+
+    /**
+     * Moves the pending deltas of a type in flight and returns every in-flight delta, by id
+     * then field. Deltas stay in flight, and are returned again by the next call, until
+     * {@link #commitDeltas} removes them. Ids are drained in chunks, each script listing the
+     * keys it touches so that it stays valid in cluster mode.
+     */
+    public Map<String, Map<String, String>> drainDeltas(String typeName) {
+        Map<String, Map<String, String>> deltas = new LinkedHashMap<>();
+        try (Jedis jedis = getResource(typeName)) {
+            List<String> ids = new ArrayList<>(jedis.sunion(dirtyDeltasKey(typeName), inflightIdsKey(typeName)));
+            for (int from = 0; from < ids.size(); from += DRAIN_DELTAS_CHUNK_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + DRAIN_DELTAS_CHUNK_SIZE, ids.size()));
+                List<String> keys = new ArrayList<>(2 + 2 * chunk.size());
+                keys.add(dirtyDeltasKey(typeName));
+                keys.add(inflightIdsKey(typeName));
+                for (String id : chunk) {
+                    keys.add(deltaKey(typeName, id));
+                    keys.add(inflightKey(typeName, id));
+                }
+                List<?> flat = (List<?>) jedis.eval(DRAIN_DELTAS_SCRIPT, keys, chunk);
+                for (int i = 0; i + 1 < flat.size(); i += 2) {
+                    List<?> pairs = (List<?>) flat.get(i + 1);
+                    Map<String, String> fields = new LinkedHashMap<>();
+                    for (int j = 0; j + 1 < pairs.size(); j += 2) {
+                        fields.put(text(pairs.get(j)), text(pairs.get(j + 1)));
                     }
-                } else {
-                    jsonMap.put(field.getName(), value);
+                    deltas.put(text(flat.get(i)), fields);
                 }
             }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to drain counter deltas from Redis: " + e.getMessage(), e);
         }
-        return jsonMap;
+        return deltas;
     }
 
-    private <T> T reconstructEntity(Map<String, Object> rawData, Class<T> type) {
-        try {
-            T entity = type.getDeclaredConstructor().newInstance();
-            Map<String, Field> fields = getCachedFields(type);
-
-            for (Map.Entry<String, Field> entry : fields.entrySet()) {
-                Field field = entry.getValue();
-                String fieldName = field.getName();
-
-                if (rawData.containsKey(fieldName)) {
-                    Object value = rawData.get(fieldName);
-                    value = convertValue(value, field.getType());
-                    field.set(entity, value);
-                } else if (field.isAnnotationPresent(ManyToOne.class) || field.isAnnotationPresent(OneToOne.class)) {
-                    Object idValue = rawData.get(fieldName + "_id");
-                    if (idValue != null) {
-                        Object relatedEntity = find(field.getType().getSimpleName() + ":" + idValue, field.getType());
-                        field.set(entity, relatedEntity);
+    /**
+     * Whether a type has deltas pending or in flight, without draining them.
+     */
+    public boolean hasDeltas(String typeName) {
+        try (Jedis jedis = getResource(typeName)) {
+            return jedis.exists(dirtyDeltasKey(typeName), inflightIdsKey(typeName)) > 0;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read counter deltas from Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds {@code deltas} back to the pending deltas of {@code typeName:id}, leaving the
+     * cached entry, which already contains them, untouched.
+     */
+    public void restoreDeltas(String typeName, String id, Map<String, String> deltas) {
+        if (deltas.isEmpty()) return;
+        try (Jedis jedis = getResource(typeName)) {
+            Transaction transaction = jedis.multi();
+            deltas.forEach((field, delta) -> transaction.hincrByFloat(deltaKey(typeName, id), field, Double.parseDouble(delta)));
+            transaction.sadd(dirtyDeltasKey(typeName), id);
+            transaction.exec();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to restore counter deltas in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes the in-flight deltas of {@code ids} once they are in the database.
+     */
+    public void commitDeltas(String typeName, Collection<String> ids) {
+        if (ids.isEmpty()) return;
+        try (Jedis jedis = getResource(typeName)) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (String id : ids) {
+                    pipeline.del(inflightKey(typeName, id));
+                }
+                pipeline.srem(inflightIdsKey(typeName), ids.toArray(new String[0]));
+                pipeline.sync();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to commit counter deltas in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The ids among {@code ids} that still have deltas waiting for the database.
+     */
+    public Set<String> withPendingDeltas(String typeName, Collection<String> ids) {
+        if (ids.isEmpty()) return Set.of();
+        Map<String, Response<Long>> replies = new LinkedHashMap<>();
+        try (Jedis jedis = getResource(typeName)) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (String id : ids) {
+                    replies.put(id, pipeline.exists(deltaKey(typeName, id), inflightKey(typeName, id)));
+                }
+                pipeline.sync();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read counter deltas from Redis: " + e.getMessage(), e);
+        }
+        Set<String> pending = new HashSet<>();
+        replies.forEach((id, reply) -> {
+            if (reply.get() > 0) pending.add(id);
+        });
+        return pending;
+    }
+
+    private static boolean isFloating(Class<?> type) {
+        return type == double.class || type == Double.class || type == float.class || type == Float.class;
+    }
+
+    private static Number add(Class<?> type, Number current, Number delta) {
+        if (current == null) {
+            current = 0;
+        }
+        if (type == int.class || type == Integer.class) return Math.addExact(current.intValue(), delta.intValue());
+        if (type == long.class || type == Long.class) return Math.addExact(current.longValue(), delta.longValue());
+        if (type == short.class || type == Short.class) return (short) (current.shortValue() + delta.shortValue());
+        if (type == byte.class || type == Byte.class) return (byte) (current.byteValue() + delta.byteValue());
+        if (type == double.class || type == Double.class) return current.doubleValue() + delta.doubleValue();
+        if (type == float.class || type == Float.class) return current.floatValue() + delta.floatValue();
+        throw new IllegalArgumentException("Unsupported counter type: " + type.getName());
+    }
+
+    private static String text(Object value) {
+        return value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private String deltaKey(String typeName, Object id) {
+        return keyPrefix + "~delta:" + typeName + ":" + id;
+    }
+
+    private String dirtyDeltasKey(String typeName) {
+        return keyPrefix + "~deltas:" + typeName;
+    }
+
+    private String inflightKey(String typeName, Object id) {
+        return keyPrefix + "~inflight:" + typeName + ":" + id;
+    }
+
+    private String inflightIdsKey(String typeName) {
+        return keyPrefix + "~inflights:" + typeName;
+    }
+
+    /**
+     * Reads every cached entity of a type by walking its registry with SSCAN and fetching
+     * each batch of ids with one pipelined GET.
+     */
+    public <T> List<T> findAllMembers(String typeName, Class<T> type) {
+        return findAllMembers(typeName, type, null, 0);
+    }
+
+    /**
+     * Same as {@link #findAllMembers(String, Class)}, decoding and resolving relations on
+     * {@code pool} when at least {@code parallelThreshold} entries are found.
+     */
+    public <T> List<T> findAllMembers(String typeName, Class<T> type, ForkJoinPool pool, int parallelThreshold) {
+        List<String> keys = new ArrayList<>();
+        List<byte[]> values = new ArrayList<>();
+        try (Jedis jedis = getResource(typeName)) {
+            scanMembers(jedis, typeName, getExpiryPolicy(type), (ids, batch) -> {
+                for (String id : ids) {
+                    keys.add(typeName + ":" + id);
+                }
+                values.addAll(batch);
+                return true;
+            });
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to find all entities in Redis: " + e.getMessage(), e);
+        }
+        return materialize(keys, values, type, pool, parallelThreshold);
+    }
+
+    /**
+     * Number of live cached entities of a type. Stale registry ids are pruned on the way.
+     */
+    public long countMembers(String typeName) {
+        try (Jedis jedis = getResource(typeName)) {
+            long[] count = {0};
+            scanLiveIds(jedis, typeName, ids -> {
+                count[0] += ids.size();
+                return true;
+            });
+            return count[0];
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to count entities in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns {@code true} as soon as one live entity of the type is found. Used to tell an
+     * empty cache apart from a query that legitimately matched nothing.
+     */
+    public boolean hasMembers(String typeName) {
+        try (Jedis jedis = getResource(typeName)) {
+            boolean[] found = {false};
+            scanLiveIds(jedis, typeName, ids -> {
+                found[0] = !ids.isEmpty();
+                return !found[0];
+            });
+            return found[0];
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to scan Redis keys: " + e.getMessage(), e);
+        }
+    }
+
+    private interface MemberBatch {
+        /** Returns {@code false} to stop the scan. */
+        boolean accept(List<String> ids, List<byte[]> values);
+    }
+
+    private interface LiveIdBatch {
+        /** Returns {@code false} to stop the scan. */
+        boolean accept(List<String> ids);
+    }
+
+    private void scanMembers(Jedis jedis, String typeName, ExpiryPolicy expiry, MemberBatch consumer) {
+        String registry = getRegistryKey(typeName);
+        Set<String> seen = new HashSet<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        ScanParams params = new ScanParams().count(1000);
+        do {
+            ScanResult<String> scan = jedis.sscan(registry, cursor, params);
+            List<String> ids = new ArrayList<>(scan.getResult().size());
+            for (String id : scan.getResult()) {
+                if (seen.add(id)) ids.add(id);
+            }
+            if (!ids.isEmpty()) {
+                List<String> keys = new ArrayList<>(ids.size());
+                for (String id : ids) {
+                    keys.add(keyPrefix + typeName + ":" + id);
+                }
+                List<byte[]> values = getRaw(jedis, keys, expiry, null);
+                List<String> liveIds = new ArrayList<>(ids.size());
+                List<byte[]> liveValues = new ArrayList<>(ids.size());
+                List<String> stale = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (values.get(i) == null) {
+                        stale.add(ids.get(i));
+                    } else {
+                        liveIds.add(ids.get(i));
+                        liveValues.add(values.get(i));
                     }
-                } else if (field.isAnnotationPresent(OneToMany.class) || field.isAnnotationPresent(ManyToMany.class)) {
-                    List<?> ids = (List<?>) rawData.get(fieldName + "_ids");
-                    if (ids != null && !ids.isEmpty()) {
-                        Collection<Object> relatedEntities;
-                        if (List.class.isAssignableFrom(field.getType())) {
-                            relatedEntities = new ArrayList<>();
-                        } else {
-                            relatedEntities = new HashSet<>();
-                        }
+                }
+                pruneStale(jedis, typeName, stale);
+                if (!consumer.accept(liveIds, liveValues)) {
+                    return;
+                }
+            }
+            cursor = scan.getCursor();
+        } while (!"0".equals(cursor));
+    }
 
-                        Class<?> genericType = getGenericType(field);
-                        if (genericType != null) {
-                            for (Object idValue : ids) {
-                                Object relatedEntity = find(genericType.getSimpleName() + ":" + idValue, genericType);
-                                if (relatedEntity != null) {
-                                    relatedEntities.add(relatedEntity);
-                                }
-                            }
-                            field.set(entity, relatedEntities);
-                        }
+    private void scanLiveIds(Jedis jedis, String typeName, LiveIdBatch consumer) {
+        String registry = getRegistryKey(typeName);
+        Set<String> seen = new HashSet<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        ScanParams params = new ScanParams().count(1000);
+        do {
+            ScanResult<String> scan = jedis.sscan(registry, cursor, params);
+            List<String> ids = new ArrayList<>(scan.getResult().size());
+            for (String id : scan.getResult()) {
+                if (seen.add(id)) ids.add(id);
+            }
+            if (!ids.isEmpty()) {
+                List<Response<Boolean>> exists = new ArrayList<>(ids.size());
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    for (String id : ids) {
+                        exists.add(pipeline.exists(keyPrefix + typeName + ":" + id));
+                    }
+                    pipeline.sync();
+                }
+                List<String> live = new ArrayList<>(ids.size());
+                List<String> stale = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (Boolean.TRUE.equals(exists.get(i).get())) {
+                        live.add(ids.get(i));
+                    } else {
+                        stale.add(ids.get(i));
                     }
                 }
+                pruneStale(jedis, typeName, stale);
+                if (!consumer.accept(live)) {
+                    return;
+                }
+            }
+            cursor = scan.getCursor();
+        } while (!"0".equals(cursor));
+    }
+
+    /**
+     * Removes registry ids whose entry no longer exists. The check is repeated server-side so
+     * that an id re-saved since it was read is kept.
+     */
+    private void pruneStale(Jedis jedis, String typeName, List<String> staleIds) {
+        if (staleIds.isEmpty()) return;
+        String registry = getRegistryKey(typeName);
+        try (Pipeline pipeline = jedis.pipelined()) {
+            for (String id : staleIds) {
+                pipeline.eval(PRUNE_SCRIPT, List.of(registry, keyPrefix + typeName + ":" + id), List.of(id));
             }
-            return entity;
+            pipeline.sync();
+        }
+    }
+
+    // --- SCHEMA NAMESPACES ---
+    // The keys of a type are named after its namespace, <Type>@<fingerprint>, so that entries
+    // written for an older layout of the class are never read back. architect:~schema:<Type>
+    // records the namespace the receiver uses; when it changes, the old one is unlinked in
+    // the background while the new one fills up.
+
+    /**
+     * Returns the namespace of {@code type}: its simple name followed by the hexadecimal
+     * {@link EntitySchema#fingerprint() fingerprint} of its fields, e.g. {@code {User@1f3a9c2b}}.
+     * The braces make it a hash tag, so that in a cluster all the keys of a type, indexes
+     * included, share one hash slot and multi-key commands on them keep working, while
+     * different types spread over the nodes.
+     */
+    public String namespace(Class<?> type) {
+        return namespaces.computeIfAbsent(type,
+            t -> "{" + t.getSimpleName() + "@" + Integer.toHexString(EntitySchema.of(t).fingerprint()) + "}");
+    }
+
+    /**
+     * Records the namespace of {@code type} as the current one. If a previous run used
+     * another one, i.e. the class changed, its keys are unlinked on a background thread.
+     */
+    public void claimNamespace(Class<?> type) {
+        String current = namespace(type);
+        String schemaKey = keyPrefix + "~schema:" + type.getSimpleName();
+        String previous;
+        try (Jedis jedis = getResource(schemaKey)) {
+            previous = jedis.setGet(schemaKey, current);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to reconstruct entity of type " + type.getSimpleName() + ": " + e.getMessage(), e);
+            throw new RuntimeException("Failed to record schema namespace in Redis: " + e.getMessage(), e);
+        }
+        if (previous != null && !previous.equals(current)) {
+            LOG.info("Schema of " + type.getSimpleName() + " changed, dropping cached namespace " + previous);
+            backgroundExecutor.submit(() -> dropNamespace(previous));
         }
     }
 
-    private Class<?> getGenericType(Field field) {
-        try {
-            Type genericType = field.getGenericType();
-            if (genericType instanceof ParameterizedType parameterizedType) {
-                Type[] typeArgs = parameterizedType.getActualTypeArguments();
-                if (typeArgs.length > 0 && typeArgs[0] instanceof Class<?> clazz) {
-                    return clazz;
+    private void dropNamespace(String namespace) {
+        try (Jedis jedis = getResource(namespace)) {
+            long dead = jedis.llen(deadLettersKey(namespace));
+            if (dead > 0) {
+                LOG.warning("Dropping " + dead + " dead letters of " + namespace + ", written for an older layout of the class");
+            }
+            jedis.unlink(getRegistryKey(namespace), warmKey(namespace), accessKey(namespace),
+                dirtyDeltasKey(namespace), inflightIdsKey(namespace), queryVersionKey(namespace),
+                deadLettersKey(namespace), deadDeltasKey(namespace));
+            try (Jedis registry = getResource(queryCachedTypesKey())) {
+                registry.srem(queryCachedTypesKey(), namespace);
+            }
+            unlinkMatching(jedis, keyPrefix + namespace + ":*");
+            unlinkMatching(jedis, deltaKey(namespace, "*"));
+            unlinkMatching(jedis, inflightKey(namespace, "*"));
+            unlinkMatching(jedis, queryKey(namespace, "*"));
+            unlinkMatching(jedis, keyPrefix + "~idx:" + namespace + ":*");
+            unlinkMatching(jedis, tombstoneKey(namespace + ":*"));
+            unlinkMatching(jedis, lockKey(namespace + ":*"));
+        } catch (Exception e) {
+            LOG.warning("Failed to drop cached namespace " + namespace + ": " + e.getMessage());
+        }
+    }
+
+    // --- QUERY RESULTS ---
+    // Each type has a version counter, architect:~ver:<Type>, incremented by every write that
+    // changes its data. A cached query result, architect:~qry:<Type>:<fingerprint>, holds the
+    // version it was computed at followed by the matching ids, one per line, and is only used
+    // while the version is unchanged. Both keys share the type's hash tag, so a lookup is a
+    // single MGET.
+
+    /**
+     * The current version of a type and the cached ids of a query, {@code null} when the
+     * query has no result cached at that version.
+     */
+    public record QueryResult(long version, List<String> ids) {}
+
+    public QueryResult findQueryResult(String typeName, String fingerprint) {
+        List<String> values;
+        try (Jedis jedis = getResource(typeName)) {
+            values = jedis.mget(queryVersionKey(typeName), queryKey(typeName, fingerprint));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read cached query result from Redis: " + e.getMessage(), e);
+        }
+        long version = values.get(0) != null ? Long.parseLong(values.get(0)) : 0;
+        String cached = values.get(1);
+        if (cached == null) {
+            return new QueryResult(version, null);
+        }
+        String[] lines = cached.split("\n", -1);
+        if (Long.parseLong(lines[0]) != version) {
+            return new QueryResult(version, null);
+        }
+        return new QueryResult(version, Arrays.asList(lines).subList(1, lines.length));
+    }
+
+    /**
+     * Caches the ids matched by a query. {@code version} is the one read before running the
+     * query, so that a write made meanwhile invalidates the result right away.
+     */
+    public void saveQueryResult(String typeName, String fingerprint, long version, List<String> ids, Duration ttl) {
+        StringBuilder value = new StringBuilder().append(version);
+        for (String id : ids) {
+            value.append('\n').append(id);
+        }
+        try (Jedis jedis = getResource(typeName)) {
+            jedis.set(queryKey(typeName, fingerprint), value.toString(), SetParams.setParams().ex(Math.max(1, ttl.toSeconds())));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to cache query result in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    // Writes only bump the version of types whose query results are cached on some node.
+    // Each node lists the types it caches queries of in architect:~qc and reads the set back
+    // every second, like the near cached types; a type stays listed once a node enabled it.
+
+    /**
+     * Turns query caching on or off for a type on this node. Enabling lists the type in
+     * Redis and bumps its version, then bumps it again once every node has re-read the list,
+     * for the writes other nodes made without a bump meanwhile.
+     */
+    public void setQueryCaching(String typeName, boolean enabled) {
+        if (!enabled) {
+            localQueryCachedTypes.remove(typeName);
+            return;
+        }
+        if (!localQueryCachedTypes.add(typeName)) return;
+        try (Jedis jedis = getResource(queryCachedTypesKey())) {
+            jedis.sadd(queryCachedTypesKey(), typeName);
+        } catch (Exception e) {
+            localQueryCachedTypes.remove(typeName);
+            throw new RuntimeException("Failed to register query cache of " + typeName + " in Redis: " + e.getMessage(), e);
+        }
+        bumpQueryVersion(typeName);
+        backgroundExecutor.submit(() -> {
+            try {
+                Thread.sleep(2 * QUERY_CACHED_TYPES_REFRESH_MS);
+                bumpQueryVersion(typeName);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.fine("Failed to invalidate cached query results of " + typeName + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private boolean cachesQueries(String typeName) {
+        if (localQueryCachedTypes.contains(typeName)) return true;
+        if (!queryCachedTypesLoaded) {
+            startQueryCachedTypesRefresh();
+        }
+        return queryCachedTypes.contains(typeName);
+    }
+
+    /**
+     * Reads the query cached types once before the first write needs them, then starts
+     * re-reading them in the background.
+     */
+    private synchronized void startQueryCachedTypesRefresh() {
+        if (queryCachedTypesLoaded) return;
+        refreshQueryCachedTypes();
+        queryCachedTypesLoaded = true;
+        backgroundExecutor.submit(() -> {
+            while (isAlive) {
+                try {
+                    Thread.sleep(QUERY_CACHED_TYPES_REFRESH_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                refreshQueryCachedTypes();
+            }
+        });
+    }
+
+    /**
+     * Re-reads the query cached types. The local ones are added back first, in case the set
+     * was cleared meanwhile.
+     */
+    private void refreshQueryCachedTypes() {
+        try (Jedis jedis = getResource(queryCachedTypesKey())) {
+            Response<Set<String>> types;
+            try (Pipeline pipeline = jedis.pipelined()) {
+                if (!localQueryCachedTypes.isEmpty()) {
+                    pipeline.sadd(queryCachedTypesKey(), localQueryCachedTypes.toArray(new String[0]));
                 }
+                types = pipeline.smembers(queryCachedTypesKey());
+                pipeline.sync();
             }
+            queryCachedTypes = types.get();
         } catch (Exception e) {
-            LOG.warning("Failed to resolve generic type for field " + field.getName() + ": " + e.getMessage());
+            if (isAlive) {
+                LOG.fine("Failed to read the query cached types: " + e.getMessage());
+            }
+        }
+    }
+
+    private String queryCachedTypesKey() {
+        return keyPrefix + "~qc";
+    }
+
+    /**
+     * Invalidates every cached query result of a type, for database writes that do not go
+     * through {@link #saveMember} or {@link #deleteMember}. Does nothing unless the type's
+     * query results are cached.
+     */
+    public void bumpQueryVersion(String typeName) {
+        if (!cachesQueries(typeName)) return;
+        try (Jedis jedis = getResource(typeName)) {
+            jedis.incr(queryVersionKey(typeName));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to invalidate cached query results in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    private String queryVersionKey(String typeName) {
+        return keyPrefix + "~ver:" + typeName;
+    }
+
+    private String queryKey(String typeName, String fingerprint) {
+        return keyPrefix + "~qry:" + typeName + ":" + fingerprint;
+    }
+
+    // --- BUDGETS ---
+    // Types with a CacheBudget record the last access time of each cached id in the sorted
+    // set architect:~lru:<Type>; writes add ids, reads refresh them. The receiver evicts the
+    // lowest scores whenever the type goes over budget.
+
+    private String trackedNamespace(Class<?> type) {
+        return getCacheBudget(type) != null ? namespace(type) : null;
+    }
+
+    private String accessKey(String typeName) {
+        return keyPrefix + "~lru:" + typeName;
+    }
+
+    /**
+     * Number of entries of the type to evict to fit {@code budget}. A memory budget is
+     * turned into an entry count from the average size of a few sampled entries.
+     */
+    public long countOverBudget(String typeName, CacheBudget budget) {
+        try (Jedis jedis = getResource(typeName)) {
+            String accessKey = accessKey(typeName);
+            long count = jedis.zcard(accessKey);
+            long limit = budget.maxEntries() > 0 ? budget.maxEntries() : Long.MAX_VALUE;
+            if (budget.maxBytes() > 0 && count > 0) {
+                long sampled = 0;
+                long bytes = 0;
+                for (String id : jedis.zrandmember(accessKey, BUDGET_SAMPLE_SIZE)) {
+                    Long usage = jedis.memoryUsage(keyPrefix + typeName + ":" + id);
+                    if (usage != null) {
+                        bytes += usage;
+                        sampled++;
+                    }
+                }
+                if (sampled > 0) {
+                    limit = Math.min(limit, budget.maxBytes() / Math.max(1, bytes / sampled));
+                }
+            }
+            return Math.max(0, count - limit);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to measure cache footprint in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes and returns the {@code count} least recently used ids of the type from its
+     * access set. The caller evicts them, or hands back those it must keep with {@link #touch}.
+     */
+    public List<String> popColdest(String typeName, long count) {
+        try (Jedis jedis = getResource(typeName)) {
+            List<String> ids = new ArrayList<>();
+            for (Tuple tuple : jedis.zpopmin(accessKey(typeName), (int) Math.min(count, Integer.MAX_VALUE))) {
+                ids.add(tuple.getElement());
+            }
+            return ids;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read access times in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    public void touch(String typeName, Collection<String> ids) {
+        if (ids.isEmpty()) return;
+        try (Jedis jedis = getResource(typeName)) {
+            double now = System.currentTimeMillis();
+            Map<String, Double> scores = new HashMap<>();
+            for (String id : ids) {
+                scores.put(id, now);
+            }
+            jedis.zadd(accessKey(typeName), scores);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to record access times in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    // --- CLIENT-SIDE CACHING ---
+    // With RedisCredentials#withClientSideCache, find() of opted-in types goes through RESP3
+    // connections with CLIENT TRACKING: Jedis keeps the values it read and Redis notifies it
+    // when one of those keys changes, from any client, so repeated reads stay in the JVM.
+    // Each key always goes through the same connection, whose cache alone holds it, since
+    // invalidations are only processed when their connection is used.
+
+    /**
+     * Makes {@link #find} of {@code type} read through the client-side cache. Ignored when
+     * the cache is not configured, and for types with a sliding expiry or a cache budget,
+     * whose reads also write.
+     */
+    public void setClientSideCaching(Class<?> type, boolean enabled) {
+        if (enabled) {
+            clientCachedTypes.add(type);
+        } else {
+            clientCachedTypes.remove(type);
+        }
+    }
+
+    /**
+     * The client-side caches, one per tracked connection, for their statistics; empty when
+     * client-side caching is not configured.
+     */
+    public List<Cache> getClientSideCaches() {
+        List<Cache> caches = new ArrayList<>(trackedClients.size());
+        for (RedisClient client : trackedClients) {
+            caches.add(client.getCache());
+        }
+        return caches;
+    }
+
+    /**
+     * Number of reads answered by the client-side caches.
+     */
+    public long getClientSideCacheHitCount() {
+        long hits = 0;
+        for (RedisClient client : trackedClients) {
+            hits += client.getCache().getStats().getHitCount();
+        }
+        return hits;
+    }
+
+    /**
+     * Number of client-side cached reads sent to the regular pool because the tracked
+     * connection of their key stayed busy for longer than {@link #TRACKED_READ_MAX_WAIT}.
+     */
+    public long getClientSideCacheBypassCount() {
+        return trackedBypasses.get();
+    }
+
+    private byte[] readTracked(String key, Class<?> type) {
+        RedisClient client = trackedClients.get(Math.floorMod(key.hashCode(), trackedClients.size()));
+        try {
+            return client.get(rawKey(key));
+        } catch (JedisException e) {
+            if (!(e.getCause() instanceof NoSuchElementException)) {
+                throw e;
+            }
+            trackedBypasses.incrementAndGet();
+            return readRaw(List.of(key), type).get(0);
+        }
+    }
+
+    private boolean usesClientSideCache(Class<?> type) {
+        return !trackedClients.isEmpty() && clientCachedTypes.contains(type)
+            && !getExpiryPolicy(type).sliding() && getCacheBudget(type) == null;
+    }
+
+    // --- REPLICAS ---
+    // Every HEARTBEAT_INTERVAL_MS the primary stamps architect:~heartbeat with its own clock;
+    // how far behind that stamp a replica is gives its staleness, on the primary's clock.
+
+    /**
+     * Lets lookups of {@code type} ({@link #find}, {@link #findMany}, {@link #findAll}) read
+     * from a replica that is at most {@code maxStaleness} behind the primary, falling back
+     * to the primary when none is. Types with a sliding expiry or a cache budget always read
+     * from the primary, as their reads also write. Passing {@code null} disables it.
+     */
+    public void setReplicaReads(Class<?> type, Duration maxStaleness) {
+        if (maxStaleness == null) {
+            replicaTolerances.remove(type);
+        } else {
+            replicaTolerances.put(type, maxStaleness);
         }
-        return null;
     }
 
-    private Object convertValue(Object value, Class<?> targetType) {
-        if (value == null) {
+    /**
+     * Number of lookups served by a replica.
+     */
+    public long getReplicaReadCount() {
+        return replicaReads.get();
+    }
+
+    /**
+     * Last measured staleness of each replica, in declaration order; {@code null} for a
+     * replica that could not be reached.
+     */
+    public List<Duration> getReplicaStaleness() {
+        List<Duration> staleness = new ArrayList<>(replicaPools.size());
+        for (int i = 0; i < replicaPools.size(); i++) {
+            long millis = replicaStaleness.get(i);
+            staleness.add(millis == Long.MAX_VALUE ? null : Duration.ofMillis(millis));
+        }
+        return staleness;
+    }
+
+    private Pool<Jedis> pickReplica(Class<?> type) {
+        Duration tolerance = replicaTolerances.get(type);
+        if (tolerance == null || replicaPools.isEmpty()
+                || getExpiryPolicy(type).sliding() || getCacheBudget(type) != null) {
             return null;
         }
+        int count = replicaPools.size();
+        int start = Math.floorMod(replicaCursor.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            int candidate = (start + i) % count;
+            if (replicaStaleness.get(candidate) <= tolerance.toMillis()) {
+                return replicaPools.get(candidate);
+            }
+        }
+        return null;
+    }
 
-        if (targetType.isAssignableFrom(value.getClass())) {
-            return value;
+    private void monitorReplicas() {
+        String heartbeatKey = keyPrefix + "~heartbeat";
+        while (isAlive) {
+            long primaryTime = -1;
+            try (Jedis jedis = jedisPool.getResource()) {
+                primaryTime = Long.parseLong(String.valueOf(jedis.eval(HEARTBEAT_SCRIPT, List.of(heartbeatKey), List.of())));
+            } catch (Exception e) {
+                LOG.fine("Failed to write the replica heartbeat: " + e.getMessage());
+            }
+            for (int i = 0; i < replicaPools.size(); i++) {
+                long staleness = Long.MAX_VALUE;
+                if (primaryTime >= 0) {
+                    try (Jedis jedis = replicaPools.get(i).getResource()) {
+                        String beat = jedis.get(heartbeatKey);
+                        if (beat != null) {
+                            staleness = Math.max(0, primaryTime - Long.parseLong(beat));
+                        }
+                    } catch (Exception e) {
+                        LOG.fine("Failed to read the heartbeat of replica " + i + ": " + e.getMessage());
+                    }
+                }
+                replicaStaleness.set(i, staleness);
+            }
+            try {
+                Thread.sleep(HEARTBEAT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
+    }
+
+    // --- WARM-UP ---
+    // architect:~warm:<Type> is set once a type has been fully loaded into the cache, so that
+    // repositories started afterwards, on this node or another one, skip their warm-up until
+    // it expires.
 
-        if (targetType == Long.class || targetType == long.class) {
-            if (value instanceof Integer) {
-                return ((Integer) value).longValue();
+    /**
+     * Caches a chunk of entities read from the database in one pipelined round trip. Entries
+     * already cached are left alone (SET NX), as they may hold writes made while the chunk
+     * was being read. Returns the ids that were actually written.
+     */
+    public <T> List<Object> saveMembersIfAbsent(String typeName, Map<Object, T> entities) {
+        if (entities.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> ids = new ArrayList<>(entities.keySet());
+        List<Response<String>> replies = new ArrayList<>(ids.size());
+        try (Jedis jedis = getResource(typeName)) {
+            try (Pipeline pipeline = jedis.pipelined()) {
+                String[] members = new String[ids.size()];
+                for (int i = 0; i < ids.size(); i++) {
+                    T entity = entities.get(ids.get(i));
+                    ExpiryPolicy expiry = getExpiryPolicy(entity.getClass());
+                    SetParams params = SetParams.setParams().nx();
+                    if (expiry.expires()) {
+                        params.ex(expiry.ttlSeconds());
+                    }
+                    byte[] value = getCodec(entity.getClass()).encode(entity);
+                    replies.add(pipeline.set(rawKey(typeName + ":" + ids.get(i)), value, params));
+                    members[i] = String.valueOf(ids.get(i));
+                }
+                pipeline.sadd(getRegistryKey(typeName), members);
+                if (getCacheBudget(entities.get(ids.get(0)).getClass()) != null) {
+                    long now = System.currentTimeMillis();
+                    Map<String, Double> scores = new HashMap<>();
+                    for (String member : members) {
+                        scores.put(member, (double) now);
+                    }
+                    pipeline.zadd(accessKey(typeName), scores, ZAddParams.zAddParams().nx());
+                }
+                pipeline.sync();
             }
-            if (value instanceof String) {
-                return Long.parseLong((String) value);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save entities to Redis: " + e.getMessage(), e);
+        }
+        List<Object> written = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if ("OK".equals(replies.get(i).get())) {
+                written.add(ids.get(i));
             }
         }
+        return written;
+    }
 
-        if (targetType == Integer.class || targetType == int.class) {
-            if (value instanceof Long) {
-                return ((Long) value).intValue();
+    /**
+     * Overwrites cached entries with rows read from the database, for a re-warm on the
+     * receiver. Entries already holding the same value, and ids with counter deltas not yet
+     * flushed, are left alone. Returns the ids written, as strings.
+     */
+    public <T> List<String> replaceMembers(String typeName, Map<Object, T> entities) {
+        if (entities.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Class<?> type = entities.values().iterator().next().getClass();
+        ExpiryPolicy expiry = getExpiryPolicy(type);
+        CacheCodec codec = getCodec(type);
+        List<byte[]> keys = new ArrayList<>(entities.size() + 4);
+        List<byte[]> args = new ArrayList<>(entities.size() * 2 + 2);
+        keys.add(dirtyDeltasKey(typeName).getBytes(StandardCharsets.UTF_8));
+        keys.add(inflightIdsKey(typeName).getBytes(StandardCharsets.UTF_8));
+        keys.add(getRegistryKey(typeName).getBytes(StandardCharsets.UTF_8));
+        keys.add(queryVersionKey(typeName).getBytes(StandardCharsets.UTF_8));
+        args.add(String.valueOf(expiry.expires() ? expiry.ttlSeconds() : 0).getBytes(StandardCharsets.UTF_8));
+        args.add((cachesQueries(typeName) ? "1" : "0").getBytes(StandardCharsets.UTF_8));
+        try (Jedis jedis = getResource(typeName)) {
+            for (Map.Entry<Object, T> entry : entities.entrySet()) {
+                keys.add(rawKey(typeName + ":" + entry.getKey()));
+                args.add(String.valueOf(entry.getKey()).getBytes(StandardCharsets.UTF_8));
+                args.add(codec.encode(entry.getValue()));
             }
-            if (value instanceof String) {
-                return Integer.parseInt((String) value);
+            List<?> written = (List<?>) jedis.eval(REPLACE_MEMBERS_SCRIPT.getBytes(StandardCharsets.UTF_8), keys, args);
+            List<String> ids = new ArrayList<>(written.size());
+            for (Object id : written) {
+                ids.add(new String((byte[]) id, StandardCharsets.UTF_8));
             }
+            return ids;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to replace entities in Redis: " + e.getMessage(), e);
         }
+    }
 
-        if (targetType == UUID.class && value instanceof String) {
-            return UUID.fromString((String) value);
+    /**
+     * Ids of the live cached entities of a type.
+     */
+    public Set<String> findMemberIds(String typeName) {
+        Set<String> ids = new HashSet<>();
+        try (Jedis jedis = getResource(typeName)) {
+            scanLiveIds(jedis, typeName, batch -> {
+                ids.addAll(batch);
+                return true;
+            });
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to list cached ids in Redis: " + e.getMessage(), e);
         }
+        return ids;
+    }
 
-        return value;
+    /**
+     * Ids with counter deltas not yet applied to the database, pending or in flight.
+     */
+    public Set<String> findDeltaIds(String typeName) {
+        try (Jedis jedis = getResource(typeName)) {
+            return jedis.sunion(dirtyDeltasKey(typeName), inflightIdsKey(typeName));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to list pending deltas in Redis: " + e.getMessage(), e);
+        }
     }
 
-    private Field getIdField(Class<?> clazz) {
-        Map<String, Field> fields = getCachedFields(clazz);
-        for (Field field : fields.values()) {
-            if (field.isAnnotationPresent(Id.class)) {
-                return field;
+    /**
+     * Marks a type as loaded. The marker expires after {@code ttl}, never when {@code null},
+     * so that the next start reloads the table and picks up rows changed in SQL meanwhile.
+     */
+    public void markWarm(String typeName, Duration ttl) {
+        try (Jedis jedis = getResource(typeName)) {
+            SetParams params = SetParams.setParams();
+            if (ttl != null) {
+                params.ex(ttl.toSeconds());
             }
+            jedis.set(warmKey(typeName), "1", params);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save warm-up marker to Redis: " + e.getMessage(), e);
+        }
+    }
+
+    public boolean isWarm(String typeName) {
+        try (Jedis jedis = getResource(typeName)) {
+            return jedis.exists(warmKey(typeName));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read warm-up marker in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    private String warmKey(String typeName) {
+        return keyPrefix + "~warm:" + typeName;
+    }
+
+    // --- DEAD LETTERS ---
+    // architect:~dead:<Type> lists the writes that kept failing to flush, oldest first, so
+    // that they outlive the receiver. Each entry is a JSON object holding the action type,
+    // attempts, error and time, with the entity encoded by the default codec in base64.
+
+    /**
+     * Appends a dead letter. Throws if it could not be stored, in which case the caller
+     * must keep the write queued.
+     */
+    public void pushDeadLetter(String typeName, DeadLetter<?> letter) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("type", letter.action().getType().name());
+        node.put("attempts", letter.attempts());
+        node.put("error", letter.error());
+        node.put("failedAt", letter.failedAt().toEpochMilli());
+        try (Jedis jedis = getResource(typeName)) {
+            node.put("entity", Base64.getEncoder().encodeToString(defaultCodec.encode(letter.action().getEntity())));
+            jedis.rpush(deadLettersKey(typeName), objectMapper.writeValueAsString(node));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to store dead letter in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the first {@code count} dead letters, all of them when negative. Entries that can
+     * no longer be decoded are returned as {@code null}, so that positions match the list.
+     */
+    public <T> List<DeadLetter<T>> findDeadLetters(String typeName, Class<T> type, int count) {
+        List<String> entries;
+        try (Jedis jedis = getResource(typeName)) {
+            entries = jedis.lrange(deadLettersKey(typeName), 0, count < 0 ? -1 : count - 1);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read dead letters from Redis: " + e.getMessage(), e);
+        }
+        RelationLoader loader = new RelationLoader(this);
+        List<DeadLetter<T>> letters = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            DeadLetter<T> letter = null;
+            try {
+                JsonNode node = objectMapper.readTree(entry);
+                T entity = decodeQuietly(Base64.getDecoder().decode(node.get("entity").asText()), type, loader);
+                if (entity != null) {
+                    letter = new DeadLetter<>(
+                        new DatabaseAction<>(entity, DatabaseAction.Type.valueOf(node.get("type").asText())),
+                        node.get("attempts").asInt(), node.get("error").asText(null),
+                        Instant.ofEpochMilli(node.get("failedAt").asLong()));
+                }
+            } catch (Exception e) {
+                LOG.warning("Failed to read dead letter of " + typeName + ": " + e.getMessage());
+            }
+            letters.add(letter);
+        }
+        try {
+            loader.resolve();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to resolve relations of dead " + type.getSimpleName() + ": " + e.getMessage(), e);
+        }
+        return letters;
+    }
+
+    public long countDeadLetters(String typeName) {
+        try (Jedis jedis = getResource(typeName)) {
+            return jedis.llen(deadLettersKey(typeName));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to count dead letters in Redis: " + e.getMessage(), e);
         }
-        return null;
+    }
+
+    /**
+     * Removes the first {@code count} dead letters, all of them when negative. Letters added
+     * meanwhile are appended at the end and kept.
+     */
+    public void removeDeadLetters(String typeName, int count) {
+        try (Jedis jedis = getResource(typeName)) {
+            if (count < 0) {
+                jedis.del(deadLettersKey(typeName));
+            } else if (count > 0) {
+                jedis.ltrim(deadLettersKey(typeName), count, -1);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to remove dead letters from Redis: " + e.getMessage(), e);
+        }
+    }
+
+    private String deadLettersKey(String typeName) {
+        return keyPrefix + "~dead:" + typeName;
+    }
+
+    // architect:~deaddeltas:<Type> lists, the same way, the counter deltas of ids whose
+    // UPDATE kept failing, as {id, deltas: {field: delta}, attempts, error, failedAt}.
+
+    private record StoredDeadDeltas(String id, Map<String, String> deltas, int attempts, String error, long failedAt) {
+    }
+
+    /**
+     * Appends dead counter deltas. Throws if they could not be stored, in which case the
+     * caller must keep them in flight.
+     */
+    public void pushDeadDeltas(String typeName, DeadDeltas deadDeltas) {
+        StoredDeadDeltas stored = new StoredDeadDeltas(deadDeltas.id(), deadDeltas.deltas(),
+            deadDeltas.attempts(), deadDeltas.error(), deadDeltas.failedAt().toEpochMilli());
+        try (Jedis jedis = getResource(typeName)) {
+            jedis.rpush(deadDeltasKey(typeName), objectMapper.writeValueAsString(stored));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to store dead counter deltas in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads every dead counter delta, oldest first. Entries that can no longer be read are
+     * returned as {@code null}, so that positions match the list.
+     */
+    public List<DeadDeltas> findDeadDeltas(String typeName) {
+        List<String> entries;
+        try (Jedis jedis = getResource(typeName)) {
+            entries = jedis.lrange(deadDeltasKey(typeName), 0, -1);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read dead counter deltas from Redis: " + e.getMessage(), e);
+        }
+        List<DeadDeltas> found = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            DeadDeltas deadDeltas = null;
+            try {
+                StoredDeadDeltas stored = objectMapper.readValue(entry, StoredDeadDeltas.class);
+                deadDeltas = new DeadDeltas(stored.id(), new LinkedHashMap<>(stored.deltas()), stored.attempts(),
+                    stored.error(), Instant.ofEpochMilli(stored.failedAt()));
+            } catch (Exception e) {
+                LOG.warning("Failed to read dead counter deltas of " + typeName + ": " + e.getMessage());
+            }
+            found.add(deadDeltas);
+        }
+        return found;
+    }
+
+    /**
+     * Removes the first {@code count} dead counter deltas, all of them when negative.
+     */
+    public void removeDeadDeltas(String typeName, int count) {
+        try (Jedis jedis = getResource(typeName)) {
+            if (count < 0) {
+                jedis.del(deadDeltasKey(typeName));
+            } else if (count > 0) {
+                jedis.ltrim(deadDeltasKey(typeName), count, -1);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to remove dead counter deltas from Redis: " + e.getMessage(), e);
+        }
+    }
+
+    private String deadDeltasKey(String typeName) {
+        return keyPrefix + "~deaddeltas:" + typeName;
+    }
+
+    // --- TOMBSTONES ---
+    // architect:~miss:<Type:id> marks an id known not to exist, so repeated lookups of it
+    // stop at Redis. Tombstones expire on their own and are dropped by saveMember.
+
+    public void saveTombstone(String key, long ttlMillis) {
+        try (Jedis jedis = getResource(key)) {
+            jedis.set(tombstoneKey(key), "1", SetParams.setParams().px(ttlMillis));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save tombstone to Redis: " + e.getMessage(), e);
+        }
+    }
+
+    public boolean hasTombstone(String key) {
+        try (Jedis jedis = getResource(key)) {
+            return jedis.exists(tombstoneKey(key));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read tombstone in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    private String tombstoneKey(String key) {
+        return keyPrefix + "~miss:" + key;
+    }
+
+    // --- LOAD LOCKS ---
+    // Short-lived locks under architect:~lock:<Type:id>, taken by the node that loads an id
+    // from the database so that other nodes wait for its result instead of loading it too.
+
+    /**
+     * Takes the load lock of {@code key} for {@code ttlMillis} unless another node holds it.
+     */
+    public boolean tryLock(String key, String token, long ttlMillis) {
+        try (Jedis jedis = getResource(key)) {
+            return "OK".equals(jedis.set(lockKey(key), token, SetParams.setParams().nx().px(ttlMillis)));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to take lock in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Releases the lock of {@code key} if it is still held with {@code token}.
+     */
+    public void unlock(String key, String token) {
+        try (Jedis jedis = getResource(key)) {
+            jedis.eval(UNLOCK_SCRIPT, List.of(lockKey(key)), List.of(token));
+        } catch (Exception e) {
+            LOG.warning("Failed to release lock in Redis: " + e.getMessage());
+        }
+    }
+
+    public boolean isLocked(String key) {
+        try (Jedis jedis = getResource(key)) {
+            return jedis.exists(lockKey(key));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read lock in Redis: " + e.getMessage(), e);
+        }
+    }
+
+    private String lockKey(String key) {
+        return keyPrefix + "~lock:" + key;
+    }
+
+    private byte[] rawKey(String key) {
+        return (keyPrefix + key).getBytes(StandardCharsets.UTF_8);
     }
 
     public void setTTL(String key, int seconds) {
-        try (Jedis jedis = jedisPool.getResource()) {
+        try (Jedis jedis = getResource(key)) {
             jedis.expire(keyPrefix + key, seconds);
         } catch (Exception e) {
             throw new RuntimeException("Failed to set TTL on key: " + e.getMessage(), e);
@@ -389,6 +2041,8 @@ public class RedisManager {
         if (redisQueueActionPool != null) {
             redisQueueActionPool.shutdown();
         }
+        nearCacheInvalidator.shutdown();
+        backgroundExecutor.shutdownNow();
         pubSubExecutor.shutdown();
         try {
             if (!pubSubExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -398,7 +2052,17 @@ public class RedisManager {
             pubSubExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
-        jedisPool.close();
+        if (cluster != null) {
+            cluster.close();
+        } else {
+            jedisPool.close();
+        }
+        for (Pool<Jedis> replica : replicaPools) {
+            replica.close();
+        }
+        for (RedisClient client : trackedClients) {
+            client.close();
+        }
     }
 
     public ObjectMapper getObjectMapper() {
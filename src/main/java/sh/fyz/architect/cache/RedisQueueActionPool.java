@@ -5,6 +5,7 @@ import sh.fyz.architect.persistent.SessionManager;
 import sh.fyz.architect.repositories.GenericCachedRepository;
 import sh.fyz.architect.repositories.GenericRepository;
 
+import java.time.Duration;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
@@ -16,56 +17,121 @@ import java.util.logging.Logger;
 public class RedisQueueActionPool {
 
     private static final Logger LOG = Logger.getLogger(RedisQueueActionPool.class.getName());
+    private static final long EVICTION_INTERVAL_MS = 1000;
 
     private final CopyOnWriteArrayList<GenericCachedRepository<?>> queue = new CopyOnWriteArrayList<>();
     private final ConcurrentLinkedQueue<AbstractMap.SimpleEntry<DatabaseAction<?>, GenericRepository<?>>> pubSubQueue = new ConcurrentLinkedQueue<>();
     private final ExecutorService threadPool;
+    private final ExecutorService warmUpPool = Executors.newVirtualThreadPerTaskExecutor();
     private volatile boolean running = true;
+    private volatile boolean asyncWarmUp;
 
-    public void add(GenericCachedRepository<?> repository) {
+    /**
+     * When enabled, {@link #start} returns right away and repositories load their table into
+     * the cache in parallel, each on its own virtual thread, serving queries from the
+     * database until they are ready. Otherwise the first use of a repository waits for it.
+     */
+    public void setAsyncWarmUp(boolean asyncWarmUp) {
+        this.asyncWarmUp = asyncWarmUp;
+    }
+
+    public boolean isAsyncWarmUp() {
+        return asyncWarmUp;
+    }
+
+    /**
+     * Registers a cached repository, so that it is covered by {@link #awaitWarmUp} and
+     * flushed on shutdown. Nothing runs until {@link GenericCachedRepository#start}.
+     */
+    public void register(GenericCachedRepository<?> repository) {
         queue.add(repository);
-        repository.all();
+    }
+
+    /**
+     * Warms up the cache of a repository and, on the receiver, starts its flusher: a virtual
+     * thread that flushes the repository whenever its flush policy says a flush is due, so a
+     * slow repository never delays the others.
+     */
+    public void start(GenericCachedRepository<?> repository) {
+        if (asyncWarmUp) {
+            warmUpPool.submit(repository::warmUp);
+        } else {
+            repository.warmUp();
+        }
+        if (threadPool != null) {
+            threadPool.submit(() -> runFlusher(repository));
+        }
+    }
+
+    /**
+     * On the receiver, starts a virtual thread that keeps a budgeted repository within its
+     * cache budget.
+     */
+    public void startEvictor(GenericCachedRepository<?> repository) {
+        if (threadPool != null) {
+            threadPool.submit(() -> runEvictor(repository));
+        }
+    }
+
+    /**
+     * Starts every registered repository not started yet, waits up to {@code timeout} for
+     * them to finish their warm-up and returns whether all of them are ready. Meant for
+     * readiness checks.
+     */
+    public boolean awaitWarmUp(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (GenericCachedRepository<?> repository : queue) {
+            Duration left = Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+            if (!repository.awaitWarmUp(left)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void add(DatabaseAction<?> action, GenericRepository<?> repository) {
         pubSubQueue.add(new AbstractMap.SimpleEntry<>(action, repository));
     }
 
+    private void runFlusher(GenericCachedRepository<?> repository) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                repository.awaitFlushDue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                repository.flushUpdates();
+            } catch (Exception e) {
+                LOG.warning("Error flushing updates for repository: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runEvictor(GenericCachedRepository<?> repository) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(EVICTION_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                repository.evictColdEntries();
+            } catch (Exception e) {
+                LOG.warning("Error evicting cold entries for repository: " + e.getMessage());
+            }
+        }
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     public RedisQueueActionPool(boolean isReceiver) {
         if (!isReceiver) {
             threadPool = null;
             return;
         }
-        threadPool = Executors.newFixedThreadPool(2);
-        threadPool.submit(() -> {
-            while (running && !Thread.currentThread().isInterrupted()) {
-                if (!RedisManager.get().isAlive()) {
-                    try {
-                        Thread.sleep(1000);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                    continue;
-                }
-                for (GenericCachedRepository<?> repository : queue) {
-                    try {
-                        repository.flushUpdates();
-                    } catch (Exception e) {
-                        LOG.warning("Error flushing updates for repository: " + e.getMessage());
-                    }
-                }
-
-                try {
-                    Thread.sleep(200);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        });
-
+        threadPool = Executors.newVirtualThreadPerTaskExecutor();
         threadPool.submit(() -> {
             while (running && RedisManager.get().isAlive()) {
                 AbstractMap.SimpleEntry<DatabaseAction<?>, GenericRepository<?>> entry;
@@ -99,18 +165,30 @@ public class RedisQueueActionPool {
         });
     }
 
+    /**
+     * Stops the flushers, then flushes whatever writes are still queued from the calling
+     * thread so that a clean shutdown does not drop them, and closes the write-ahead logs.
+     */
     public void shutdown() {
         running = false;
+        warmUpPool.shutdownNow();
         if (threadPool != null) {
-            threadPool.shutdown();
+            threadPool.shutdownNow();
             try {
-                if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
-                    threadPool.shutdownNow();
-                }
+                threadPool.awaitTermination(5, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
-                threadPool.shutdownNow();
                 Thread.currentThread().interrupt();
             }
+            for (GenericCachedRepository<?> repository : queue) {
+                if (SessionManager.isInitialized()) {
+                    try {
+                        repository.flushUpdates();
+                    } catch (Exception e) {
+                        LOG.warning("Error flushing updates on shutdown: " + e.getMessage());
+                    }
+                }
+                repository.closeWriteAheadLog();
+            }
         }
     }
 }
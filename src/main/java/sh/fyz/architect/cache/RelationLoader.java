@@ -0,0 +1,184 @@
+package sh.fyz.architect.cache;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import sh.fyz.architect.persistent.SessionManager;
+import sh.fyz.architect.repositories.GenericRepository;
+import sh.fyz.architect.repositories.RepositoryRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the relations of a batch of decoded entities. Codecs only record the related
+ * ids; once the batch is decoded, {@link #resolve()} loads them level by level: every id
+ * wanted at one depth is fetched with one MGET per related type, all in a single pipeline,
+ * and the ids missing from Redis are loaded with one SQL {@code IN} query per type.
+ * <p>
+ * Entities are tracked by key ({@code Type:id}), so an entity referenced several times, or
+ * through a cycle, is loaded once and shared.
+ */
+final class RelationLoader implements CacheCodec.RelationResolver {
+
+    private static final Logger LOG = Logger.getLogger(RelationLoader.class.getName());
+
+    private record Pending(Object owner, EntitySchema.Property property, List<Object> ids, boolean many) {}
+
+    private final RedisManager redis;
+    private final Map<String, Object> loaded = new HashMap<>();
+    private List<Pending> pending = new ArrayList<>();
+
+    RelationLoader(RedisManager redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * Records an entity already in hand, so relations pointing back to it reuse the instance.
+     */
+    void register(String key, Object entity) {
+        loaded.put(key, entity);
+    }
+
+    @Override
+    public void resolveOne(Object owner, EntitySchema.Property property, Object id) {
+        pending.add(new Pending(owner, property, List.of(id), false));
+    }
+
+    @Override
+    public void resolveMany(Object owner, EntitySchema.Property property, List<Object> ids) {
+        pending.add(new Pending(owner, property, ids, true));
+    }
+
+    void resolve() throws Exception {
+        List<Pending> assignments = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            List<Pending> level = pending;
+            pending = new ArrayList<>();
+            assignments.addAll(level);
+
+            Map<Class<?>, Set<String>> wanted = new LinkedHashMap<>();
+            for (Pending relation : level) {
+                Class<?> target = relation.property().target();
+                for (Object id : relation.ids()) {
+                    if (id != null && !loaded.containsKey(key(target, id))) {
+                        wanted.computeIfAbsent(target, t -> new LinkedHashSet<>()).add(String.valueOf(id));
+                    }
+                }
+            }
+            if (wanted.isEmpty()) {
+                break;
+            }
+
+            Map<Class<?>, List<String>> misses = fetchFromRedis(wanted);
+            for (Map.Entry<Class<?>, List<String>> entry : misses.entrySet()) {
+                loadFromDatabase(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (Pending relation : assignments) {
+            Class<?> target = relation.property().target();
+            if (relation.many()) {
+                Collection<Object> related = relation.property().newCollection();
+                for (Object id : relation.ids()) {
+                    Object entity = id == null ? null : loaded.get(key(target, id));
+                    if (entity != null) {
+                        related.add(entity);
+                    }
+                }
+                relation.property().set(relation.owner(), related);
+            } else {
+                relation.property().set(relation.owner(), loaded.get(key(target, relation.ids().get(0))));
+            }
+        }
+    }
+
+    /**
+     * Fetches one depth level and decodes the hits, which queues the next level. Returns the
+     * ids absent from Redis, per type. All types share one pipeline on a single server; in a
+     * cluster each type is read from the node that holds it.
+     */
+    private Map<Class<?>, List<String>> fetchFromRedis(Map<Class<?>, Set<String>> wanted) {
+        Map<Class<?>, List<String>> ids = new LinkedHashMap<>();
+        Map<Class<?>, List<byte[]>> values = new LinkedHashMap<>();
+        List<Map<Class<?>, Set<String>>> groups = new ArrayList<>();
+        if (redis.isCluster()) {
+            wanted.forEach((target, typeIds) -> groups.add(Map.of(target, typeIds)));
+        } else {
+            groups.add(wanted);
+        }
+        for (Map<Class<?>, Set<String>> group : groups) {
+            if (group.isEmpty()) continue;
+            String namespace = redis.namespace(group.keySet().iterator().next());
+            try (Jedis jedis = redis.getResource(namespace)) {
+                Map<Class<?>, Response<List<byte[]>>> responses = new LinkedHashMap<>();
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    for (Map.Entry<Class<?>, Set<String>> entry : group.entrySet()) {
+                        List<String> typeIds = new ArrayList<>(entry.getValue());
+                        byte[][] keys = new byte[typeIds.size()][];
+                        for (int i = 0; i < keys.length; i++) {
+                            keys[i] = (redis.getKeyPrefix() + key(entry.getKey(), typeIds.get(i))).getBytes(StandardCharsets.UTF_8);
+                        }
+                        ids.put(entry.getKey(), typeIds);
+                        responses.put(entry.getKey(), pipeline.mget(keys));
+                    }
+                    pipeline.sync();
+                }
+                responses.forEach((target, response) -> values.put(target, response.get()));
+            }
+        }
+
+        Map<Class<?>, List<String>> misses = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, List<String>> entry : ids.entrySet()) {
+            Class<?> target = entry.getKey();
+            List<byte[]> data = values.get(target);
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                String id = entry.getValue().get(i);
+                Object entity = data.get(i) == null ? null : redis.decodeQuietly(data.get(i), target, this);
+                if (entity != null) {
+                    loaded.put(key(target, id), entity);
+                } else {
+                    misses.computeIfAbsent(target, t -> new ArrayList<>()).add(id);
+                }
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Loads cache misses with one {@code IN} query, through the type's registered repository
+     * when there is one so that the loaded entities are cached again. Ids still missing are
+     * remembered as absent.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void loadFromDatabase(Class<?> target, List<String> ids) {
+        for (String id : ids) {
+            loaded.put(key(target, id), null);
+        }
+        if (!SessionManager.isInitialized() || SessionManager.get().getEntityClass(target.getSimpleName()) != target) {
+            return;
+        }
+
+        GenericRepository repository = RepositoryRegistry.get().getRepository(target.getSimpleName().toLowerCase() + "s");
+        if (repository == null || repository.getEntityClass() != target) {
+            repository = new GenericRepository<>(target);
+        }
+        try {
+            List<Object> typedIds = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                typedIds.add(repository.prepareEntityId(id));
+            }
+            EntitySchema schema = EntitySchema.of(target);
+            for (Object entity : (List<Object>) repository.findAllById(typedIds)) {
+                loaded.put(key(target, schema.idOf(entity)), entity);
+            }
+        } catch (Exception e) {
+            LOG.warning("Failed to load " + target.getSimpleName() + " relations from the database: " + e.getMessage());
+        }
+    }
+
+    private String key(Class<?> target, Object id) {
+        return redis.namespace(target) + ":" + id;
+    }
+}
@@ -0,0 +1,320 @@
+package sh.fyz.architect.cache;
+
+import sh.fyz.architect.entities.DatabaseAction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the writes queued by a cached repository on the receiver, kept in
+ * memory-mapped segment files on local disk so that they survive a crash until they are
+ * committed to the database.
+ * <p>
+ * Positions are logical byte offsets across segments; a segment is named after the offset
+ * of its first byte. Each record is {@code [length][crc32][action type][entity]}, the entity
+ * being written with the default JSON codec so that it stays readable when the class
+ * changes. {@link #commit} records the position up to which writes are in the database and
+ * deletes the segments entirely below it; {@link #readPending} returns the writes after it.
+ * <p>
+ * Durability is group-committed: {@link #awaitDurable} forces the mapped pages to disk
+ * once for every append made since the previous force, while the other callers wait.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(WriteAheadLog.class.getName());
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 8;
+    private static final byte SAVE = 1;
+    private static final byte DELETE = 2;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private record Segment(long base, FileChannel channel, MappedByteBuffer buffer) {
+        long end() {
+            return base + buffer.capacity();
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel checkpointChannel;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+
+    private long writePosition;
+    private long checkpoint;
+    private volatile long syncedPosition;
+    private boolean syncing;
+
+    /**
+     * Opens the log stored in {@code directory}, creating it if needed. A record torn by a
+     * crash ends the log: it and anything after it are overwritten by the next appends.
+     */
+    public WriteAheadLog(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be > " + HEADER_SIZE);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer stored = ByteBuffer.allocate(Long.BYTES);
+        if (checkpointChannel.read(stored, 0) == Long.BYTES) {
+            checkpoint = stored.flip().getLong();
+        }
+
+        List<Long> bases;
+        try (Stream<Path> files = Files.list(directory)) {
+            bases = files.map(file -> file.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .toList();
+        }
+        for (long base : bases) {
+            Path file = segmentFile(base);
+            if (base + Files.size(file) <= checkpoint) {
+                Files.delete(file);
+            } else {
+                segments.add(map(base, 0));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(map(checkpoint, segmentSize));
+        }
+        Segment last = segments.get(segments.size() - 1);
+        writePosition = scan(last, null, null, null);
+        clearFrom(last, writePosition);
+        syncedPosition = writePosition;
+    }
+
+    /**
+     * Returns the writes recorded after the last commit, in append order. Entities are
+     * decoded with the default JSON codec and their relations loaded like cached ones.
+     */
+    public <T> List<DatabaseAction<T>> readPending(Class<T> type) throws Exception {
+        RelationLoader loader = new RelationLoader(RedisManager.get());
+        List<DatabaseAction<T>> actions = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                scan(segment, type, loader, actions);
+            }
+        } finally {
+            lock.unlock();
+        }
+        loader.resolve();
+        return actions;
+    }
+
+    /**
+     * Walks the valid records of {@code segment} that lie after the checkpoint, decoding them
+     * into {@code out} when a type is given, and returns the position after the last one.
+     * The walk stops at the first empty or torn record.
+     */
+    private <T> long scan(Segment segment, Class<T> type, CacheCodec.RelationResolver resolver,
+                          List<DatabaseAction<T>> out) {
+        MappedByteBuffer buffer = segment.buffer();
+        int offset = (int) Math.max(0, checkpoint - segment.base());
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) break;
+            byte[] record = new byte[length];
+            buffer.get(offset + HEADER_SIZE, record);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) break;
+
+            if (type != null) {
+                byte[] entity = new byte[length - 1];
+                System.arraycopy(record, 1, entity, 0, entity.length);
+                T decoded = RedisManager.get().decodeQuietly(entity, type, resolver);
+                if (decoded == null) {
+                    LOG.warning("Dropping unreadable write-ahead log record in " + directory);
+                } else {
+                    out.add(new DatabaseAction<>(decoded, record[0] == DELETE ? DatabaseAction.Type.DELETE : DatabaseAction.Type.SAVE));
+                }
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return segment.base() + offset;
+    }
+
+    /**
+     * Encodes an action into a record. Done by the caller before {@link #append}, outside of
+     * any lock.
+     */
+    public byte[] encode(DatabaseAction<?> action) throws Exception {
+        byte[] entity = RedisManager.get().getDefaultCodec().encode(action.getEntity());
+        byte[] record = new byte[entity.length + 1];
+        record[0] = action.getType() == DatabaseAction.Type.DELETE ? DELETE : SAVE;
+        System.arraycopy(entity, 0, record, 1, entity.length);
+        return record;
+    }
+
+    /**
+     * Appends an encoded record and returns the position right after it. The record reaches
+     * the page cache immediately; pass the position to {@link #awaitDurable} to wait for disk.
+     */
+    public long append(byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        lock.lock();
+        try {
+            Segment segment = segments.get(segments.size() - 1);
+            int needed = HEADER_SIZE + record.length;
+            if (writePosition + needed > segment.end()) {
+                segment = map(segment.end(), Math.max(segmentSize, needed));
+                segments.add(segment);
+                writePosition = segment.base();
+            }
+            int offset = (int) (writePosition - segment.base());
+            segment.buffer().putInt(offset + Integer.BYTES, (int) crc.getValue());
+            segment.buffer().put(offset + HEADER_SIZE, record);
+            segment.buffer().putInt(offset, record.length);
+            writePosition += needed;
+            return writePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long position() {
+        lock.lock();
+        try {
+            return writePosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until everything up to {@code position} is on disk. The first caller forces all
+     * the appends made so far; callers arriving meanwhile wait for it and are usually covered
+     * by the same force.
+     */
+    public void awaitDurable(long position) throws IOException {
+        if (syncedPosition >= position) return;
+        syncLock.lock();
+        try {
+            while (syncing && syncedPosition < position) {
+                synced.awaitUninterruptibly();
+            }
+            if (syncedPosition >= position) return;
+            syncing = true;
+        } finally {
+            syncLock.unlock();
+        }
+
+        long target = syncedPosition;
+        try {
+            List<Segment> dirty = new ArrayList<>();
+            lock.lock();
+            try {
+                target = writePosition;
+                for (Segment segment : segments) {
+                    if (segment.end() > syncedPosition && segment.base() < target) {
+                        dirty.add(segment);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (Segment segment : dirty) {
+                segment.buffer().force();
+            }
+        } finally {
+            syncLock.lock();
+            try {
+                syncing = false;
+                syncedPosition = Math.max(syncedPosition, target);
+                synced.signalAll();
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Records that every write up to {@code position} is in the database, then deletes the
+     * segments that only hold committed writes.
+     */
+    public void commit(long position) throws IOException {
+        lock.lock();
+        try {
+            if (position <= checkpoint) return;
+            checkpoint = position;
+            checkpointChannel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, position), 0);
+            checkpointChannel.force(false);
+            while (segments.size() > 1 && segments.get(0).end() <= checkpoint) {
+                Segment segment = segments.remove(0);
+                segment.channel().close();
+                Files.deleteIfExists(segmentFile(segment.base()));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.buffer().force();
+                segment.channel().close();
+            }
+            segments.clear();
+            checkpointChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zeroes {@code segment} from {@code position} on, so that the remains of a torn record
+     * are never mistaken for the end of a later one.
+     */
+    private void clearFrom(Segment segment, long position) {
+        byte[] zeros = new byte[8192];
+        int offset = (int) (position - segment.base());
+        int capacity = segment.buffer().capacity();
+        while (offset < capacity) {
+            int chunk = Math.min(zeros.length, capacity - offset);
+            segment.buffer().put(offset, zeros, 0, chunk);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Maps the segment starting at {@code base}; {@code size} 0 maps an existing file as is.
+     */
+    private Segment map(long base, int size) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(base),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long length = size > 0 ? size : channel.size();
+        return new Segment(base, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+}
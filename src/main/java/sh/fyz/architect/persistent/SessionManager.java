@@ -4,6 +4,7 @@ import io.github.classgraph.ClassGraph;
 import io.github.classgraph.ScanResult;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
 
@@ -24,6 +25,7 @@ public class SessionManager {
     private static final Logger LOG = Logger.getLogger(SessionManager.class.getName());
     private static volatile SessionManager instance;
     private static final Object LOCK = new Object();
+    private static final int JDBC_BATCH_SIZE = 20;
 
     private SessionFactory sessionFactory;
     private final ConcurrentHashMap<String, Class<?>> registeredEntityClasses = new ConcurrentHashMap<>();
@@ -65,7 +67,7 @@ public class SessionManager {
                 settings.put("hibernate.hikari.keepaliveTime", "300000");
                 settings.put("hibernate.hikari.leakDetectionThreshold", "60000");
 
-                settings.put("hibernate.jdbc.batch_size", "20");
+                settings.put("hibernate.jdbc.batch_size", String.valueOf(JDBC_BATCH_SIZE));
                 settings.put("hibernate.order_inserts", "true");
                 settings.put("hibernate.order_updates", "true");
 
@@ -188,6 +190,26 @@ public class SessionManager {
         return sessionFactory.openSession();
     }
 
+    /**
+     * Opens a session without persistence context, for bulk writes that do not need dirty
+     * checking or cascades. Statements are batched by {@link #getJdbcBatchSize()}.
+     */
+    public StatelessSession getStatelessSession() {
+        if (sessionFactory == null) {
+            throw new IllegalStateException("SessionFactory is not available. No database credentials were provided.");
+        }
+        if (sessionFactory.isClosed()) {
+            throw new IllegalStateException("SessionFactory is closed. Architect has been stopped.");
+        }
+        StatelessSession session = sessionFactory.openStatelessSession();
+        session.setJdbcBatchSize(JDBC_BATCH_SIZE);
+        return session;
+    }
+
+    public int getJdbcBatchSize() {
+        return JDBC_BATCH_SIZE;
+    }
+
     public void close() {
         if (sessionFactory != null) {
             sessionFactory.close();
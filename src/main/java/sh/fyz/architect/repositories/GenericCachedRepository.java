@@ -2,20 +2,50 @@ package sh.fyz.architect.repositories;
 
 import sh.fyz.architect.entities.DatabaseAction;
 import sh.fyz.architect.entities.IdentifiableEntity;
+import sh.fyz.architect.cache.CacheBudget;
+import sh.fyz.architect.cache.CacheCodec;
+import sh.fyz.architect.cache.EntityIndex;
+import sh.fyz.architect.cache.EntitySchema;
+import sh.fyz.architect.cache.ExpiryPolicy;
+import sh.fyz.architect.cache.NearCache;
 import sh.fyz.architect.cache.RedisManager;
+import sh.fyz.architect.cache.WriteAheadLog;
+import sh.fyz.architect.persistent.SessionManager;
 
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.ManyToOne;
-import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.Version;
 
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -25,26 +55,442 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
 
     private static final Logger LOG = Logger.getLogger(GenericCachedRepository.class.getName());
     private static final ConcurrentHashMap<String, Pattern> LIKE_PATTERN_CACHE = new ConcurrentHashMap<>();
+    // Flushes of repositories sharing a type, which drain the same in-flight deltas, take
+    // turns so that each delta is applied once.
+    private static final ConcurrentHashMap<String, ReentrantLock> TYPE_FLUSH_LOCKS = new ConcurrentHashMap<>();
+    private static final int DEFAULT_FLUSH_BATCH_SIZE = 500;
+    private static final Duration DEFAULT_FLUSH_MAX_DELAY = Duration.ofMillis(200);
+    private static final int DEFAULT_MAX_FLUSH_ATTEMPTS = 5;
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofSeconds(30);
+    private static final int DELETE_CHUNK_SIZE = 500;
+    private static final long LOAD_LOCK_POLL_MS = 10;
+    private static final int DEFAULT_WARM_UP_CHUNK_SIZE = 1000;
+    // How long the flush lock holder waits for the snapshot lock. A save writing through
+    // holds the snapshot lock while it waits for the flush lock, so the wait must stay short.
+    private static final long SNAPSHOT_LOCK_TIMEOUT_MS = 100;
+    private static final Duration DEFAULT_WARM_UP_MARKER_TTL = Duration.ofDays(1);
+    private static final int DEFAULT_PARALLEL_QUERY_THRESHOLD = 50_000;
+    private static final Set<Class<?>> COUNTER_TYPES = Set.of(int.class, Integer.class, long.class, Long.class,
+        short.class, Short.class, byte.class, Byte.class, double.class, Double.class, float.class, Float.class);
 
     private final Class<T> type;
-    private final ConcurrentLinkedQueue<DatabaseAction<T>> updateQueue = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedDeque<DatabaseAction<T>> retryQueue = new ConcurrentLinkedDeque<>();
+    private final boolean statelessFlush;
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Condition flushDue = pendingLock.newCondition();
+    private LinkedHashMap<Object, DatabaseAction<T>> pendingWrites = new LinkedHashMap<>();
+    private long oldestPendingAt;
+    private long retryNotBefore = System.nanoTime();
+    private volatile int flushBatchSize = DEFAULT_FLUSH_BATCH_SIZE;
+    private volatile Duration flushMaxDelay = DEFAULT_FLUSH_MAX_DELAY;
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    private final String typeName;
     private final String cacheKeyPrefix;
-    private final String allEntitiesKey;
+    private final EntityIndex index;
+    private volatile NearCache<T> nearCache;
+    private final ConcurrentHashMap<String, CompletableFuture<T>> inFlightLoads = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedLoads = new AtomicLong();
+    private volatile Duration loadLockTtl;
+    private volatile Duration negativeCacheTtl;
+    private final AtomicLong negativeHits = new AtomicLong();
+    private volatile WriteAheadLog writeAheadLog;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Held shared by receiver saves from enqueue to cache write, and exclusively by the
+    // flusher while it drains, so that drained counter deltas are always newer than the
+    // drained saves of the same entities.
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final Condition queueSlotFree = pendingLock.newCondition();
+    private volatile int writeQueueCapacity = Integer.MAX_VALUE;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private volatile Duration overflowBlockTimeout = Duration.ZERO;
+    private final AtomicLong rejectedWrites = new AtomicLong();
+    private final AtomicLong writeThroughs = new AtomicLong();
+    private final Map<DatabaseAction<T>, Integer> flushAttempts = new IdentityHashMap<>();
+    private volatile int maxFlushAttempts = DEFAULT_MAX_FLUSH_ATTEMPTS;
+    private int failedFlushes;
+    // Set by increment() so that the next flush drains deltas without asking Redis first.
+    private final AtomicBoolean deltasRecorded = new AtomicBoolean();
+    // Delta flush failures by id, and when each failing id may be retried; flusher only.
+    private final Map<String, Integer> deltaAttempts = new HashMap<>();
+    private final Map<String, Long> deltaRetryAt = new HashMap<>();
+    private long deltasRetryNotBefore;
+    private int failedDeltaFlushes;
+    private volatile WarmUpState warmUpState = WarmUpState.PENDING;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean evictorStarted = new AtomicBoolean();
+    private volatile CompletableFuture<Void> warmUpDone = new CompletableFuture<>();
+    private final AtomicLong warmedEntities = new AtomicLong();
+    private final Set<String> deletedDuringWarmUp = ConcurrentHashMap.newKeySet();
+    private final Set<String> savedDuringWarmUp = ConcurrentHashMap.newKeySet();
+    private volatile Duration warmUpMarkerTtl = DEFAULT_WARM_UP_MARKER_TTL;
+    private volatile int warmUpChunkSize = DEFAULT_WARM_UP_CHUNK_SIZE;
+    private final ReentrantLock warmUpLock = new ReentrantLock();
+    private final AtomicLong evictedEntries = new AtomicLong();
+    private volatile Duration queryCacheTtl;
+    private volatile int parallelQueryThreshold = DEFAULT_PARALLEL_QUERY_THRESHOLD;
+    private volatile ForkJoinPool parallelQueryPool;
+    private final AtomicLong queryCacheHits = new AtomicLong();
+
+    /**
+     * What {@link #save} and {@link #delete} do when the write queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for the next flush to free room, up to a timeout, then reject. */
+        BLOCK,
+        /** Write the entity to the database synchronously instead of queuing it. */
+        WRITE_THROUGH,
+        /** Fail immediately with an {@link IllegalStateException}. */
+        REJECT
+    }
+
+    /**
+     * Progress of the initial load of the table into Redis. Until it is {@link #READY},
+     * queries and {@link #all()} read from the database; {@link #findById} uses the cache
+     * throughout.
+     */
+    public enum WarmUpState {
+        PENDING,
+        RUNNING,
+        READY,
+        /** The load failed; queries keep reading from the database until {@link #warmUp()} succeeds. */
+        FAILED
+    }
+
+    private record Drained<T>(List<DatabaseAction<T>> actions, long logPosition,
+                              Map<String, Map<String, String>> deltas) {}
+
+    /**
+     * An action that failed to flush {@code attempts} times, with the last error.
+     */
+    public record DeadLetter<T>(DatabaseAction<T> action, int attempts, String error, Instant failedAt) {}
+
+    /**
+     * Counter deltas of entity {@code id}, by field, whose UPDATE failed {@code attempts}
+     * times, with the last error.
+     */
+    public record DeadDeltas(String id, Map<String, String> deltas, int attempts, String error, Instant failedAt) {}
 
     public GenericCachedRepository(Class<T> type) {
         super(type);
         this.type = type;
-        this.cacheKeyPrefix = type.getSimpleName() + ":";
-        this.allEntitiesKey = cacheKeyPrefix + "*";
-        RedisManager.get().getRedisQueueActionPool().add(this);
+        this.typeName = RedisManager.get().namespace(type);
+        this.cacheKeyPrefix = typeName + ":";
+        this.index = new EntityIndex(type);
+        this.statelessFlush = supportsStatelessFlush(type);
+        if (RedisManager.get().isReceiver()) {
+            RedisManager.get().claimNamespace(type);
+        }
+        RedisManager.get().getRedisQueueActionPool().register(this);
+    }
+
+    /**
+     * Warms up the cache and, on the receiver, starts the background flusher, plus the
+     * evictor if the type has a cache budget. Happens on first use, so that configuration
+     * chained after the constructor applies to the warm-up; call it to warm up eagerly.
+     * Does nothing if already started.
+     */
+    public GenericCachedRepository<T> start() {
+        if (started.get() || !started.compareAndSet(false, true)) {
+            return this;
+        }
+        RedisManager.get().getRedisQueueActionPool().start(this);
+        if (RedisManager.get().getCacheBudget(type) != null) {
+            startEvictor();
+        }
+        return this;
+    }
+
+    private void startEvictor() {
+        if (evictorStarted.compareAndSet(false, true)) {
+            RedisManager.get().getRedisQueueActionPool().startEvictor(this);
+        }
+    }
+
+    /**
+     * Declares a Redis index on {@code field} in addition to the fields annotated with
+     * {@link sh.fyz.architect.cache.CacheIndexed}. Entities already in the cache are
+     * re-indexed immediately. The declaration is stored in Redis, so the other nodes index
+     * the field too, at the latest from their next write of the type.
+     */
+    public GenericCachedRepository<T> addIndex(String field) {
+        return addIndex(field, false);
+    }
+
+    /**
+     * Declares a sorted Redis index on a numeric or temporal {@code field}. Range conditions
+     * on it are resolved in Redis, and {@code orderBy(field)} queries whose conditions only
+     * target that field read just the requested page.
+     */
+    public GenericCachedRepository<T> addSortedIndex(String field) {
+        return addIndex(field, true);
+    }
+
+    /**
+     * Enables a bounded in-JVM cache consulted by {@link #findById} before Redis. Entries
+     * expire after {@code ttl} and are invalidated on every node when any node saves or
+     * deletes them. Returned instances are shared: treat them as read-only.
+     */
+    public GenericCachedRepository<T> enableNearCache(int maxEntries, Duration ttl) {
+        NearCache<T> cache = new NearCache<>(maxEntries, ttl);
+        RedisManager.get().getNearCacheInvalidator().register(typeName, cache);
+        this.nearCache = cache;
+        return this;
+    }
+
+    public NearCache<T> getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * Makes cache misses of {@link #findById} take a short Redis lock per id, so that only
+     * one node of the cluster loads a given id from the database at a time; the others wait
+     * up to {@code lockTtl} for it to appear in Redis. Within a JVM, misses are always
+     * coalesced. Passing {@code null} disables the lock.
+     */
+    public GenericCachedRepository<T> useDistributedLoadLock(Duration lockTtl) {
+        if (lockTtl != null && (lockTtl.isNegative() || lockTtl.isZero())) {
+            throw new IllegalArgumentException("lockTtl must be > 0");
+        }
+        this.loadLockTtl = lockTtl;
+        return this;
+    }
+
+    /**
+     * Remembers ids that {@link #findById} did not find in the database, and ids deleted
+     * through this repository, for {@code ttl}: lookups of them return {@code null} without
+     * reaching the database. Saving the id clears its entry. Passing {@code null} disables it.
+     */
+    public GenericCachedRepository<T> enableNegativeCache(Duration ttl) {
+        if (ttl != null && (ttl.isNegative() || ttl.isZero())) {
+            throw new IllegalArgumentException("ttl must be > 0");
+        }
+        this.negativeCacheTtl = ttl;
+        return this;
+    }
+
+    /**
+     * Number of {@link #findById} calls answered by a negative cache entry.
+     */
+    public long getNegativeHitCount() {
+        return negativeHits.get();
+    }
+
+    /**
+     * Number of {@link #findById} misses served by another caller's database load.
+     */
+    public long getCoalescedLoadCount() {
+        return coalescedLoads.get();
+    }
+
+    /**
+     * Sets the codec used to store this type in Redis, e.g. {@link sh.fyz.architect.cache.BinaryCacheCodec}.
+     * Existing JSON entries remain readable; other unreadable entries are reloaded lazily.
+     * Passing {@code null} restores the default JSON codec.
+     */
+    public GenericCachedRepository<T> useCodec(CacheCodec codec) {
+        RedisManager.get().setCodec(type, codec);
+        return this;
+    }
+
+    /**
+     * Records every queued write in a memory-mapped log under {@code directory/<Type>} before
+     * {@link #save} or {@link #delete} returns, so that writes not yet flushed to the
+     * database survive a crash. Writes left in the log by a previous run are put back in the
+     * cache and queued again. Has no effect on non-receiver instances, which queue nothing.
+     */
+    public GenericCachedRepository<T> enableWriteAheadLog(Path directory) {
+        if (!RedisManager.get().isReceiver()) {
+            return this;
+        }
+        if (writeAheadLog != null) {
+            throw new IllegalStateException("Write-ahead log already enabled for " + typeName);
+        }
+        try {
+            WriteAheadLog log = new WriteAheadLog(directory.resolve(type.getSimpleName()), WriteAheadLog.DEFAULT_SEGMENT_SIZE);
+            List<DatabaseAction<T>> recovered = log.readPending(type);
+            for (DatabaseAction<T> action : recovered) {
+                switch (action.getType()) {
+                    case SAVE -> writeToCache(action.getEntity(), true);
+                    case DELETE -> evictFromCache(action.getEntity().getId());
+                }
+            }
+            this.writeAheadLog = log;
+            if (!recovered.isEmpty()) {
+                requeue(recovered, flushMaxDelay);
+                start();
+                LOG.info("Recovered " + recovered.size() + " unflushed writes for " + typeName + " from the write-ahead log");
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to open write-ahead log for " + typeName + ": " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    /**
+     * Closes the write-ahead log, if any. Writes still queued stay in it for the next start.
+     */
+    public void closeWriteAheadLog() {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) return;
+        writeAheadLog = null;
+        try {
+            log.close();
+        } catch (IOException e) {
+            LOG.warning("Failed to close write-ahead log for " + typeName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets how long this type's entries live in Redis, e.g. {@link ExpiryPolicy#sliding} for
+     * hot entities or {@link ExpiryPolicy#fixed} for large reference data. Overrides the
+     * {@link sh.fyz.architect.cache.CacheTtl} annotation; {@code null} restores it.
+     */
+    public GenericCachedRepository<T> setExpiryPolicy(ExpiryPolicy policy) {
+        RedisManager.get().setExpiryPolicy(type, policy);
+        return this;
+    }
+
+    /**
+     * Caches the ids matched by each distinct query of this type in Redis for up to
+     * {@code ttl}, so that repeating a query costs one lookup plus the fetch of the matching
+     * entities. Every write that changes the type invalidates all of its cached results.
+     * Only {@code findAll} and {@code findFirst} are cached, counts are not.
+     * <p>
+     * Writes on every node invalidate the results once they learn, within a second, that
+     * some node caches the queries of the type.
+     */
+    public GenericCachedRepository<T> enableQueryCache(Duration ttl) {
+        if (ttl == null || ttl.toSeconds() < 1) {
+            throw new IllegalArgumentException("Query cache TTL must be at least one second");
+        }
+        RedisManager.get().setQueryCaching(typeName, true);
+        this.queryCacheTtl = ttl;
+        return this;
+    }
+
+    public GenericCachedRepository<T> disableQueryCache() {
+        this.queryCacheTtl = null;
+        RedisManager.get().setQueryCaching(typeName, false);
+        return this;
+    }
+
+    /**
+     * Number of queries answered from the query result cache.
+     */
+    public long getQueryCacheHitCount() {
+        return queryCacheHits.get();
+    }
+
+    /**
+     * Makes {@link #findById} read this type through the RESP3 client-side cache configured
+     * with {@link sh.fyz.architect.cache.RedisCredentials#withClientSideCache}: repeated reads
+     * of a hot entry are answered in-process, and Redis itself invalidates the local copy
+     * when the entry changes. Takes precedence over replica reads for single lookups.
+     */
+    public GenericCachedRepository<T> enableClientSideCache() {
+        RedisManager.get().setClientSideCaching(type, true);
+        return this;
+    }
+
+    public GenericCachedRepository<T> disableClientSideCache() {
+        RedisManager.get().setClientSideCaching(type, false);
+        return this;
+    }
+
+    /**
+     * Lets {@link #findById} and {@link #findAllById} read this type from a Redis replica
+     * declared with {@link sh.fyz.architect.cache.RedisCredentials#withReplicas}, as long as
+     * it is at most {@code maxStaleness} behind the primary. Entries the replica does not
+     * have yet are read from the primary. Passing {@code null} reads from the primary only.
+     */
+    public GenericCachedRepository<T> readFromReplicas(Duration maxStaleness) {
+        if (maxStaleness != null && maxStaleness.isNegative()) {
+            throw new IllegalArgumentException("maxStaleness must be >= 0");
+        }
+        RedisManager.get().setReplicaReads(type, maxStaleness);
+        return this;
+    }
+
+    /**
+     * Bounds how much of this type stays in Redis, e.g. {@link CacheBudget#entries} or
+     * {@link CacheBudget#memory}; the receiver evicts the least recently used entries
+     * beyond it. Overrides the {@link sh.fyz.architect.cache.CacheLimit} annotation;
+     * {@code null} restores it. Queries of a bounded type read from the database.
+     */
+    public GenericCachedRepository<T> setCacheBudget(CacheBudget budget) {
+        RedisManager.get().setCacheBudget(type, budget);
+        if (budget != null && started.get()) {
+            startEvictor();
+        }
+        return this;
+    }
+
+    /**
+     * Number of entries evicted from Redis by this repository to stay within its budget.
+     */
+    public long getEvictedEntryCount() {
+        return evictedEntries.get();
+    }
+
+    /**
+     * Evicts the least recently used entries of this type until it fits its budget, and
+     * returns how many were evicted. Called periodically by the action pool on the receiver.
+     * Entries with a write still queued or counter deltas not yet flushed are kept, as the
+     * database does not have them yet.
+     */
+    public int evictColdEntries() {
+        CacheBudget budget = RedisManager.get().getCacheBudget(type);
+        if (budget == null) return 0;
+        long excess = RedisManager.get().countOverBudget(typeName, budget);
+        if (excess <= 0) return 0;
+
+        List<String> kept = new ArrayList<>();
+        int evicted = 0;
+        List<String> coldest = RedisManager.get().popColdest(typeName, excess);
+        Set<String> counting = RedisManager.get().withPendingDeltas(typeName, coldest);
+        for (String id : coldest) {
+            Object typedId = prepareEntityId(id);
+            if (hasPendingWrite(typedId) || counting.contains(id)) {
+                kept.add(id);
+            } else {
+                evictFromCache(typedId, false);
+                evicted++;
+            }
+        }
+        RedisManager.get().touch(typeName, kept);
+        evictedEntries.addAndGet(evicted);
+        return evicted;
+    }
+
+    /**
+     * Whether every row of the type is in Redis, so that queries can be answered from it.
+     * Never true for a budgeted or expiring type: entries leave Redis while the warm-up
+     * marker stays.
+     */
+    private boolean cachesWholeType() {
+        return isWarm() && RedisManager.get().getCacheBudget(type) == null
+            && !RedisManager.get().getExpiryPolicy(type).expires();
+    }
+
+    private GenericCachedRepository<T> addIndex(String field, boolean sorted) {
+        validateFieldName(field);
+        if (index.addField(field, sorted)) {
+            Map<Object, T> cached = new LinkedHashMap<>();
+            for (T entity : getAllFromCache()) {
+                cached.put(entity.getId(), entity);
+            }
+            index.backfill(cached, List.of(field));
+        }
+        return this;
     }
 
     @Override
     public T save(T entity) {
+        start();
         if (entity.getId() == null) {
             if (RedisManager.get().isReceiver()) {
                 entity = super.save(entity);
+                writeToCache(entity, true);
+                return entity;
             } else {
                 throw new UnsupportedOperationException(
                     "Cannot create new entities (null ID) on a non-receiver instance. " +
@@ -53,58 +499,991 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
             }
         }
 
-        String key = cacheKeyPrefix + entity.getId();
-        RedisManager.get().save(key, entity);
-
+        long logPosition = 0;
         if (RedisManager.get().isReceiver()) {
-            updateQueue.add(new DatabaseAction<>(entity, DatabaseAction.Type.SAVE));
+            snapshotLock.readLock().lock();
+            try {
+                logPosition = enqueue(new DatabaseAction<>(entity, DatabaseAction.Type.SAVE));
+                if (logPosition < 0) {
+                    entity = writeThrough(entity);
+                }
+                writeToCache(entity, true);
+            } finally {
+                snapshotLock.readLock().unlock();
+            }
+        } else {
+            writeToCache(entity, true);
         }
+        awaitDurable(logPosition);
         return entity;
     }
 
+    /**
+     * Saves {@code entity} straight to the database when the write queue overflows. Waits
+     * for a running flush, whose counter deltas may predate this save and must land first.
+     */
+    private T writeThrough(T entity) {
+        flushLock.lock();
+        try {
+            return super.save(entity);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // --- COUNTERS ---
+
+    /**
+     * Adds {@code delta} to the numeric {@code field} of an entity, atomically in Redis, so
+     * that concurrent increments from every node add up instead of overwriting each other.
+     * The database gets the accumulated deltas on the receiver's next flush as
+     * {@code UPDATE ... SET field = field + delta} statements instead of entity merges.
+     * An entity that is not cached is loaded first. Returns the updated entity, or
+     * {@code null} when it does not exist.
+     * <p>
+     * {@link #save} writes every field, counters included: it supersedes the increments of
+     * the entity made before it.
+     */
+    public T increment(Object id, String field, Number delta) {
+        start();
+        validateFieldName(field);
+        EntitySchema.Property target = EntitySchema.of(type).property(field);
+        if (target == null || target.kind() != EntitySchema.Kind.VALUE || !COUNTER_TYPES.contains(target.field().getType())) {
+            throw new IllegalArgumentException("Field '" + field + "' of " + type.getSimpleName() + " is not a numeric counter");
+        }
+        EntitySchema.Property idProperty = EntitySchema.of(type).idProperty();
+        if (idProperty != null && idProperty.name().equals(field)) {
+            throw new IllegalArgumentException("Cannot increment the id of " + type.getSimpleName());
+        }
+
+        T updated = RedisManager.get().incrementMember(typeName, id, type, target, delta, index);
+        if (updated == null) {
+            if (findById(id) == null) return null;
+            updated = RedisManager.get().incrementMember(typeName, id, type, target, delta, index);
+            if (updated == null) {
+                throw new IllegalStateException(typeName + " " + id + " left the cache while being incremented");
+            }
+        }
+        deltasRecorded.set(true);
+        invalidateNearCaches(cacheKeyPrefix + id);
+        return resolveRelations(updated);
+    }
+
+    /**
+     * Drains the write queue and moves the counter deltas recorded since the last flush in
+     * flight, both under the exclusive snapshot lock. The deltas are left for the next flush
+     * when a save writing through holds the lock, as it waits for this flush to finish. When
+     * this node recorded no delta and Redis holds none from other nodes, only the write
+     * queue is drained, without the lock.
+     */
+    private Drained<T> drainForFlush() {
+        if (!deltasRecorded.getAndSet(false) && !RedisManager.get().hasDeltas(typeName)) {
+            return drainPendingWrites();
+        }
+        boolean locked = false;
+        try {
+            locked = snapshotLock.writeLock().tryLock(SNAPSHOT_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locked) {
+            deltasRecorded.set(true);
+            return drainPendingWrites();
+        }
+        try {
+            Map<String, Map<String, String>> deltas = RedisManager.get().drainDeltas(typeName);
+            Drained<T> drained = drainPendingWrites();
+            return new Drained<>(drained.actions(), drained.logPosition(), deltas);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the in-flight deltas, except those of {@code held} ids whose queued save is
+     * being retried and must land first, and those of ids waiting out a retry backoff. When
+     * the batch fails, it is split in halves until the failing ids are isolated: their
+     * deltas stay in flight and are retried with exponential backoff, then moved to the dead
+     * deltas after {@link #setMaxFlushAttempts max attempts}. A connection failure only
+     * delays the next attempt.
+     */
+    private void flushDeltas(Map<String, Map<String, String>> deltas, Set<String> held) {
+        long now = System.nanoTime();
+        if (deltas.isEmpty() || now - deltasRetryNotBefore < 0) return;
+        deltaAttempts.keySet().retainAll(deltas.keySet());
+        deltaRetryAt.keySet().retainAll(deltas.keySet());
+        List<String> ready = new ArrayList<>();
+        for (String id : deltas.keySet()) {
+            Long retryAt = deltaRetryAt.get(id);
+            if (!held.contains(id) && (retryAt == null || now - retryAt >= 0)) {
+                ready.add(id);
+            }
+        }
+        if (ready.isEmpty()) return;
+
+        Exception error = writeDeltas(deltas, ready);
+        if (error != null && isConnectionFailure(error)) {
+            LOG.warning("Failed to flush counter deltas of " + typeName + ", database unreachable: " + error.getMessage());
+            deltasRetryNotBefore = now + retryBackoff(failedDeltaFlushes++).toNanos();
+            return;
+        }
+        failedDeltaFlushes = 0;
+        List<String> done = error == null ? ready : isolateDeltas(deltas, ready, error);
+        for (String id : done) {
+            deltaAttempts.remove(id);
+            deltaRetryAt.remove(id);
+        }
+        RedisManager.get().commitDeltas(typeName, done);
+        if (!done.isEmpty()) {
+            RedisManager.get().bumpQueryVersion(typeName);
+        }
+    }
+
+    /**
+     * Writes the deltas of {@code ids}, bisecting them after {@code error}. Returns the ids
+     * whose deltas are done with: written, or moved to the dead deltas.
+     */
+    private List<String> isolateDeltas(Map<String, Map<String, String>> deltas, List<String> ids, Exception error) {
+        if (ids.size() > 1) {
+            int middle = ids.size() / 2;
+            List<String> done = new ArrayList<>();
+            for (List<String> half : List.of(ids.subList(0, middle), ids.subList(middle, ids.size()))) {
+                Exception halfError = writeDeltas(deltas, half);
+                done.addAll(halfError == null ? half : isolateDeltas(deltas, half, halfError));
+            }
+            return done;
+        }
+
+        String id = ids.get(0);
+        int attempts = deltaAttempts.merge(id, 1, Integer::sum);
+        if (attempts < maxFlushAttempts) {
+            LOG.warning("Failed to flush counter deltas of " + typeName + " " + id
+                + " (attempt " + attempts + "): " + error.getMessage());
+            deltaRetryAt.put(id, System.nanoTime() + retryBackoff(attempts - 1).toNanos());
+            return List.of();
+        }
+        try {
+            RedisManager.get().pushDeadDeltas(typeName,
+                new DeadDeltas(id, deltas.get(id), attempts, String.valueOf(error.getMessage()), Instant.now()));
+        } catch (Exception e) {
+            LOG.warning("Failed to store dead counter deltas of " + typeName + " " + id
+                + ", keeping them in flight: " + e.getMessage());
+            return List.of();
+        }
+        LOG.severe("Moved counter deltas of " + typeName + " " + id + " to the dead deltas after "
+            + attempts + " attempts: " + error.getMessage());
+        return ids;
+    }
+
+    /**
+     * Writes the deltas of {@code ids} in one transaction, as one batched
+     * {@code UPDATE ... SET column = column + ?} statement per field. Returns the error, or
+     * {@code null} once committed.
+     */
+    private Exception writeDeltas(Map<String, Map<String, String>> deltas, List<String> ids) {
+        Map<String, List<String>> idsByField = new LinkedHashMap<>();
+        for (String id : ids) {
+            for (String field : deltas.get(id).keySet()) {
+                idsByField.computeIfAbsent(field, f -> new ArrayList<>()).add(id);
+            }
+        }
+        EntitySchema schema = EntitySchema.of(type);
+        int batchSize = SessionManager.get().getJdbcBatchSize();
+        try (StatelessSession session = SessionManager.get().getStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                AbstractEntityPersister persister = (AbstractEntityPersister) session
+                    .getFactory().unwrap(SessionFactoryImplementor.class)
+                    .getMappingMetamodel().getEntityDescriptor(type);
+                String idColumn = persister.getIdentifierColumnNames()[0];
+                session.doWork(connection -> {
+                    for (Map.Entry<String, List<String>> entry : idsByField.entrySet()) {
+                        EntitySchema.Property property = schema.property(entry.getKey());
+                        if (property == null) continue;
+                        String column = persister.getPropertyColumnNames(property.name())[0];
+                        try (PreparedStatement statement = connection.prepareStatement("UPDATE " + persister.getTableName()
+                                + " SET " + column + " = " + column + " + ? WHERE " + idColumn + " = ?")) {
+                            int batched = 0;
+                            for (String id : entry.getValue()) {
+                                statement.setObject(1, toFieldType(property.field().getType(), deltas.get(id).get(entry.getKey())));
+                                statement.setObject(2, prepareEntityId(id));
+                                statement.addBatch();
+                                if (++batched % batchSize == 0) {
+                                    statement.executeBatch();
+                                }
+                            }
+                            if (batched % batchSize != 0) {
+                                statement.executeBatch();
+                            }
+                        }
+                    }
+                });
+                transaction.commit();
+                return null;
+            } catch (Exception e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                return e;
+            }
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    private Duration retryBackoff(int failures) {
+        long backoff = Math.max(flushMaxDelay.toMillis(), 1) << Math.min(failures, 20);
+        return Duration.ofMillis(Math.min(backoff, MAX_RETRY_BACKOFF.toMillis()));
+    }
+
+    private static Number toFieldType(Class<?> fieldType, String value) {
+        java.math.BigDecimal delta = new java.math.BigDecimal(value);
+        if (fieldType == int.class || fieldType == Integer.class) return delta.intValue();
+        if (fieldType == long.class || fieldType == Long.class) return delta.longValue();
+        if (fieldType == short.class || fieldType == Short.class) return delta.shortValue();
+        if (fieldType == byte.class || fieldType == Byte.class) return delta.byteValue();
+        if (fieldType == float.class || fieldType == Float.class) return delta.floatValue();
+        return delta.doubleValue();
+    }
+
     @Override
     public T findById(Object id) {
+        start();
         String key = cacheKeyPrefix + id;
+        NearCache<T> near = nearCache;
+        long stamp = 0;
+        if (near != null) {
+            T local = near.get(key);
+            if (local != null) {
+                return local;
+            }
+            stamp = near.stamp();
+        }
+
         T cachedEntity = RedisManager.get().find(key, type);
         if (cachedEntity != null) {
-            return resolveRelations(cachedEntity);
+            T resolved = resolveRelations(cachedEntity);
+            if (near != null) {
+                near.put(key, resolved, stamp);
+            }
+            return resolved;
+        }
+        if (negativeCacheTtl != null && RedisManager.get().hasTombstone(key)) {
+            negativeHits.incrementAndGet();
+            return null;
+        }
+        T dbEntity = loadOnce(id, key);
+        if (dbEntity != null && near != null) {
+            near.put(key, dbEntity, stamp);
+        }
+        return dbEntity;
+    }
+
+    /**
+     * Serializes database loads per key: the first caller to miss loads the entity and
+     * caches it, concurrent callers for the same key wait for it and then read their own
+     * copy back from Redis.
+     */
+    private T loadOnce(Object id, String key) {
+        CompletableFuture<T> load = new CompletableFuture<>();
+        CompletableFuture<T> running = inFlightLoads.putIfAbsent(key, load);
+        if (running != null) {
+            coalescedLoads.incrementAndGet();
+            T loaded;
+            try {
+                loaded = running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+            if (loaded == null) return null;
+            T cached = RedisManager.get().find(key, type);
+            return cached != null ? resolveRelations(cached) : loaded;
         }
-        T dbEntity = super.findById(id);
-        if (dbEntity != null) {
-            RedisManager.get().save(key, dbEntity);
-            return dbEntity;
+
+        try {
+            T loaded = loadUnderLock(id, key);
+            load.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, load);
         }
-        return null;
+    }
+
+    /**
+     * With a distributed load lock, only the node holding the lock of {@code key} reads the
+     * database; the others poll Redis for the entity it writes, and load it themselves if the
+     * lock is released or expires without it.
+     */
+    private T loadUnderLock(Object id, String key) {
+        Duration lockTtl = loadLockTtl;
+        if (lockTtl == null) {
+            return loadFromDatabase(id);
+        }
+        String token = UUID.randomUUID().toString();
+        if (RedisManager.get().tryLock(key, token, lockTtl.toMillis())) {
+            try {
+                return loadFromDatabase(id);
+            } finally {
+                RedisManager.get().unlock(key, token);
+            }
+        }
+
+        long deadline = System.nanoTime() + lockTtl.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(LOAD_LOCK_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            T cached = RedisManager.get().find(key, type);
+            if (cached != null) {
+                return resolveRelations(cached);
+            }
+            if (negativeCacheTtl != null && RedisManager.get().hasTombstone(key)) {
+                return null;
+            }
+            if (!RedisManager.get().isLocked(key)) break;
+        }
+        return loadFromDatabase(id);
+    }
+
+    private T loadFromDatabase(Object id) {
+        DatabaseAction<T> pending = pendingWrite(id);
+        if (pending != null) {
+            return fromPendingWrite(pending);
+        }
+        T entity = super.findById(id);
+        if (entity != null) {
+            writeToCache(entity, false);
+        } else {
+            writeTombstone(id);
+        }
+        return entity;
+    }
+
+    private void writeTombstone(Object id) {
+        Duration ttl = negativeCacheTtl;
+        if (ttl != null) {
+            RedisManager.get().saveTombstone(cacheKeyPrefix + id, ttl.toMillis());
+        }
+    }
+
+    /**
+     * Reads every id from Redis in one pipelined round trip, then loads the misses with a
+     * single {@code IN} query and caches them.
+     */
+    @Override
+    public List<T> findAllById(Collection<?> ids) {
+        start();
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            keys.add(cacheKeyPrefix + id);
+        }
+        List<T> found = new ArrayList<>(resolveRelations(RedisManager.get().findMany(keys, type)));
+
+        Set<String> foundIds = new HashSet<>();
+        for (T entity : found) {
+            foundIds.add(String.valueOf(entity.getId()));
+        }
+        List<Object> missing = new ArrayList<>();
+        for (Object id : ids) {
+            if (foundIds.contains(String.valueOf(id))) continue;
+            DatabaseAction<T> pending = pendingWrite(id);
+            if (pending == null) {
+                missing.add(id);
+            } else if (pending.getType() == DatabaseAction.Type.SAVE) {
+                found.add(fromPendingWrite(pending));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (T entity : super.findAllById(missing)) {
+                writeToCache(entity, false);
+                found.add(entity);
+            }
+        }
+        return found;
     }
 
     @Override
     public void delete(T entity) {
-        String key = cacheKeyPrefix + entity.getId();
-        RedisManager.get().delete(key);
+        start();
         if (RedisManager.get().isReceiver()) {
-            updateQueue.add(new DatabaseAction<>(entity, DatabaseAction.Type.DELETE));
+            long logPosition = enqueue(new DatabaseAction<>(entity, DatabaseAction.Type.DELETE));
+            if (logPosition < 0) {
+                super.delete(entity);
+            }
+            evictFromCache(entity.getId());
+            writeTombstone(entity.getId());
+            awaitDurable(logPosition);
         } else {
+            evictFromCache(entity.getId());
             super.delete(entity);
+            writeTombstone(entity.getId());
         }
     }
 
     private List<T> getAllFromCache() {
-        return RedisManager.get().findAll(allEntitiesKey, type);
+        return RedisManager.get().findAllMembers(typeName, type, getParallelQueryPool(), parallelQueryThreshold);
+    }
+
+    /**
+     * Writes the entity to Redis and its indexes. {@code broadcast} is set for writes that
+     * change the entity, so near caches on every node drop their copy; it is left unset for
+     * values freshly loaded from the database.
+     */
+    private void writeToCache(T entity, boolean broadcast) {
+        String key = cacheKeyPrefix + entity.getId();
+        if (warmUpState == WarmUpState.RUNNING) {
+            savedDuringWarmUp.add(String.valueOf(entity.getId()));
+        }
+        RedisManager.get().saveMember(typeName, entity.getId(), entity, broadcast, index);
+        if (broadcast) {
+            invalidateNearCaches(key);
+        }
+    }
+
+    private void evictFromCache(Object id) {
+        evictFromCache(id, true);
+    }
+
+    /**
+     * Removes the entity from Redis and its indexes. {@code changed} is unset for budget
+     * evictions, which do not change the data.
+     */
+    private void evictFromCache(Object id, boolean changed) {
+        String key = cacheKeyPrefix + id;
+        if (warmUpState == WarmUpState.RUNNING) {
+            deletedDuringWarmUp.add(String.valueOf(id));
+        }
+        RedisManager.get().deleteMember(typeName, id, changed, index);
+        invalidateNearCaches(key);
+    }
+
+    private void invalidateNearCaches(String key) {
+        NearCache<T> near = nearCache;
+        if (near != null) {
+            near.invalidate(key);
+        }
+        RedisManager.get().getNearCacheInvalidator().publish(key);
+    }
+
+    /**
+     * Loads the cached entities that may match {@code builder}. Index-backed conditions
+     * narrow the fetch down to the matching ids; otherwise the whole type is read. Returns
+     * {@code null} when the type has nothing cached, meaning the query must go to the database.
+     */
+    private List<T> loadCandidates(QueryBuilder<T> builder) {
+        Set<String> ids = index.candidateIds(builder.getConditions());
+        if (ids == null) {
+            List<T> all = getAllFromCache();
+            return all == null || all.isEmpty() ? null : all;
+        }
+
+        List<T> matched;
+        if (ids.isEmpty()) {
+            matched = new ArrayList<>();
+        } else {
+            List<String> keys = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                keys.add(cacheKeyPrefix + id);
+            }
+            matched = RedisManager.get().findMany(keys, type, getParallelQueryPool(), parallelQueryThreshold);
+        }
+        if (matched.isEmpty() && !RedisManager.get().hasMembers(typeName)) {
+            return null;
+        }
+        return matched;
+    }
+
+    /**
+     * Serves an ordered, paginated query straight from a sorted index: only the ids of the
+     * requested page are read and fetched. Returns {@code null} when the query does not
+     * qualify, or when the page contains stale or non-matching entries, in which case the
+     * regular path recomputes the result.
+     */
+    private List<T> loadOrderedPage(QueryBuilder<T> builder, int limit) {
+        List<String> ids = index.orderedIds(builder.getConditions(), builder.getOrderBys(), builder.getOffset(), limit);
+        if (ids == null) return null;
+        if (ids.isEmpty()) {
+            return RedisManager.get().hasMembers(typeName) ? new ArrayList<>() : null;
+        }
+
+        List<String> keys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            keys.add(cacheKeyPrefix + id);
+        }
+        List<T> page = RedisManager.get().findMany(keys, type);
+        if (page.size() != ids.size()) return null;
+
+        for (T entity : page) {
+            if (!matchesAll(entity, builder.getConditions())) return null;
+        }
+        return resolveRelations(page);
+    }
+
+    private boolean matchesAll(T entity, List<QueryBuilder.Condition> conditions) {
+        for (QueryBuilder.Condition c : conditions) {
+            if (!matchesCondition(entity, c)) return false;
+        }
+        return true;
+    }
+
+    // --- WRITE-BEHIND QUEUE ---
+    // Pending database writes are keyed by entity id: a later SAVE or DELETE of the same id
+    // replaces the pending one in place, so only the latest state of each entity is flushed.
+    // The flusher thread of the repository waits on flushDue until the queue holds
+    // flushBatchSize writes or its oldest write has waited flushMaxDelay.
+    // With a write-ahead log, writes are appended to it under pendingLock, so the log position
+    // read when a batch is drained covers exactly the writes of that batch and earlier ones.
+
+    /**
+     * Queues a write and returns its write-ahead log position, or {@code 0} without a log.
+     * When the queue is full and the entity has no write pending, the overflow policy
+     * applies: {@code -1} tells the caller to write through to the database.
+     */
+    private long enqueue(DatabaseAction<T> action) {
+        Object id = action.getEntity().getId();
+        WriteAheadLog log = writeAheadLog;
+        byte[] record = null;
+        if (log != null) {
+            try {
+                record = log.encode(action);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to encode " + typeName + " for the write-ahead log: " + e.getMessage(), e);
+            }
+        }
+        Object key = id != null ? id : new Object();
+        pendingLock.lock();
+        try {
+            if (!awaitQueueSlot(key)) {
+                writeThroughs.incrementAndGet();
+                return -1;
+            }
+            long position = record != null ? log.append(record) : 0;
+            if (pendingWrites.isEmpty()) {
+                oldestPendingAt = System.nanoTime();
+            }
+            if (pendingWrites.put(key, action) != null) {
+                coalescedWrites.incrementAndGet();
+            }
+            if (pendingWrites.size() == 1 || pendingWrites.size() >= Math.min(flushBatchSize, writeQueueCapacity)) {
+                flushDue.signalAll();
+            }
+            return position;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to the write-ahead log of " + typeName + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the write queue of " + typeName, e);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Turns the pending writes of {@code entities} into deletes, so a bulk delete is not undone
+     * by a save still waiting in the queue, and returns the write-ahead log position to await.
+     */
+    private long replacePendingWrites(List<T> entities) {
+        long position = 0;
+        pendingLock.lock();
+        try {
+            for (T entity : entities) {
+                if (pendingWrites.containsKey(entity.getId())) {
+                    position = Math.max(position, enqueue(new DatabaseAction<>(entity, DatabaseAction.Type.DELETE)));
+                }
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+        return position;
+    }
+
+    /**
+     * Called with pendingLock held. Returns {@code true} when {@code key} may be queued,
+     * {@code false} when the write must go straight to the database, and throws when the
+     * write is rejected.
+     */
+    private boolean awaitQueueSlot(Object key) throws InterruptedException {
+        if (pendingWrites.size() < writeQueueCapacity || pendingWrites.containsKey(key)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case WRITE_THROUGH -> {
+                return false;
+            }
+            case BLOCK -> {
+                long remaining = overflowBlockTimeout.toNanos();
+                while (pendingWrites.size() >= writeQueueCapacity && !pendingWrites.containsKey(key)) {
+                    if (remaining <= 0) break;
+                    remaining = queueSlotFree.awaitNanos(remaining);
+                }
+                if (pendingWrites.size() < writeQueueCapacity || pendingWrites.containsKey(key)) {
+                    return true;
+                }
+            }
+            case REJECT -> {
+            }
+        }
+        rejectedWrites.incrementAndGet();
+        throw new IllegalStateException("Write queue of " + typeName + " is full (" + writeQueueCapacity + " pending writes)");
+    }
+
+    private void awaitDurable(long logPosition) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null || logPosition <= 0) return;
+        try {
+            log.awaitDurable(logPosition);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sync the write-ahead log of " + typeName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Drained<T> drainPendingWrites() {
+        pendingLock.lock();
+        try {
+            WriteAheadLog log = writeAheadLog;
+            long logPosition = log != null ? log.position() : 0;
+            if (pendingWrites.isEmpty()) return new Drained<>(List.of(), logPosition, Map.of());
+            List<DatabaseAction<T>> batch = new ArrayList<>(pendingWrites.values());
+            pendingWrites = new LinkedHashMap<>();
+            queueSlotFree.signalAll();
+            return new Drained<>(batch, logPosition, Map.of());
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Puts a failed batch back in front of the queue. Writes queued for the same ids since
+     * the batch was drained are newer and win. The next attempt waits {@code retryDelay}.
+     */
+    private void requeue(List<DatabaseAction<T>> batch, Duration retryDelay) {
+        pendingLock.lock();
+        try {
+            LinkedHashMap<Object, DatabaseAction<T>> merged = new LinkedHashMap<>();
+            for (DatabaseAction<T> action : batch) {
+                Object id = action.getEntity().getId();
+                merged.put(id != null ? id : new Object(), action);
+            }
+            for (Map.Entry<Object, DatabaseAction<T>> entry : pendingWrites.entrySet()) {
+                if (merged.put(entry.getKey(), entry.getValue()) != null) {
+                    coalescedWrites.incrementAndGet();
+                }
+            }
+            pendingWrites = merged;
+            oldestPendingAt = System.nanoTime();
+            retryNotBefore = oldestPendingAt + retryDelay.toNanos();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Sets when queued writes are flushed to the database: as soon as {@code maxBatchSize}
+     * entities are pending, or once the oldest pending write has waited {@code maxDelay}.
+     */
+    public GenericCachedRepository<T> setFlushPolicy(int maxBatchSize, Duration maxDelay) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be >= 1");
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("maxDelay must be >= 0");
+        }
+        pendingLock.lock();
+        try {
+            this.flushBatchSize = maxBatchSize;
+            this.flushMaxDelay = maxDelay;
+            flushDue.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Bounds the number of entities with a pending write. Writes to an entity that is already
+     * pending are always accepted, since they replace the queued write; any other write made
+     * while the queue is full is handled by {@code policy}. {@code blockTimeout} is how long
+     * {@link OverflowPolicy#BLOCK} waits before rejecting the write.
+     */
+    public GenericCachedRepository<T> setWriteQueueLimit(int capacity, OverflowPolicy policy, Duration blockTimeout) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        if (blockTimeout == null || blockTimeout.isNegative()) {
+            throw new IllegalArgumentException("blockTimeout must be >= 0");
+        }
+        pendingLock.lock();
+        try {
+            this.writeQueueCapacity = capacity;
+            this.overflowPolicy = policy;
+            this.overflowBlockTimeout = blockTimeout;
+            queueSlotFree.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+        return this;
+    }
+
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Number of writes refused because the write queue was full.
+     */
+    public long getRejectedWriteCount() {
+        return rejectedWrites.get();
+    }
+
+    /**
+     * Number of writes sent straight to the database because the write queue was full.
+     */
+    public long getWriteThroughCount() {
+        return writeThroughs.get();
+    }
+
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    public Duration getFlushMaxDelay() {
+        return flushMaxDelay;
+    }
+
+    /**
+     * Blocks until a flush is due under the flush policy, or for at most the flush max delay
+     * while nothing is queued, so that counter deltas recorded by other nodes get flushed too.
+     * Such an idle flush only checks whether Redis holds deltas before draining them.
+     * Called by the flusher thread of {@link sh.fyz.architect.cache.RedisQueueActionPool}.
+     */
+    public void awaitFlushDue() throws InterruptedException {
+        pendingLock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                if (pendingWrites.isEmpty()) {
+                    flushDue.awaitNanos(flushMaxDelay.toNanos());
+                    if (pendingWrites.isEmpty()) return;
+                    continue;
+                }
+                long wait = retryNotBefore - now;
+                if (wait <= 0) {
+                    if (pendingWrites.size() >= Math.min(flushBatchSize, writeQueueCapacity)) return;
+                    wait = oldestPendingAt + flushMaxDelay.toNanos() - now;
+                    if (wait <= 0) return;
+                }
+                flushDue.awaitNanos(wait);
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Number of entities with a write waiting to be flushed to the database.
+     */
+    public int getPendingWriteCount() {
+        pendingLock.lock();
+        try {
+            return pendingWrites.size();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Number of queued writes that were absorbed by a later write of the same entity.
+     */
+    public long getCoalescedWriteCount() {
+        return coalescedWrites.get();
+    }
+
+    /**
+     * Writes the queued actions to the database in one transaction. When it fails, the batch
+     * is split in halves until the failing actions are isolated, so one bad row does not
+     * hold back the others. A failing action is retried with exponential backoff and moved
+     * to the dead letters after {@link #setMaxFlushAttempts max attempts}; connection
+     * failures only delay the retry. Flushes of the same repository never overlap, so
+     * batches commit in the order they were drained.
+     */
+    public void flushUpdates() {
+        flushLock.lock();
+        ReentrantLock typeFlushLock = TYPE_FLUSH_LOCKS.computeIfAbsent(typeName, name -> new ReentrantLock());
+        typeFlushLock.lock();
+        try {
+            Drained<T> drained = drainForFlush();
+            if (drained.actions().isEmpty()) {
+                flushDeltas(drained.deltas(), Set.of());
+                return;
+            }
+
+            List<DatabaseAction<T>> retry = writeIsolating(drained.actions());
+            if (retry.size() < drained.actions().size()) {
+                RedisManager.get().bumpQueryVersion(typeName);
+            }
+            Set<String> held = new HashSet<>();
+            for (DatabaseAction<T> action : retry) {
+                held.add(String.valueOf(action.getEntity().getId()));
+            }
+            flushDeltas(drained.deltas(), held);
+            if (retry.isEmpty()) {
+                failedFlushes = 0;
+                flushAttempts.clear();
+                commitWriteAheadLog(drained.logPosition());
+                return;
+            }
+
+            flushAttempts.keySet().retainAll(identitySet(retry).keySet());
+            requeue(retry, retryBackoff(failedFlushes++));
+        } finally {
+            typeFlushLock.unlock();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes {@code batch}, bisecting it on failure. Returns the actions to retry later.
+     */
+    private List<DatabaseAction<T>> writeIsolating(List<DatabaseAction<T>> batch) {
+        Exception error = writeBatch(batch);
+        if (error == null) {
+            return List.of();
+        }
+        if (isConnectionFailure(error)) {
+            LOG.warning("Failed to flush updates for " + typeName + ", database unreachable: " + error.getMessage());
+            return batch;
+        }
+        if (batch.size() > 1) {
+            int middle = batch.size() / 2;
+            List<DatabaseAction<T>> retry = new ArrayList<>(writeIsolating(batch.subList(0, middle)));
+            retry.addAll(writeIsolating(batch.subList(middle, batch.size())));
+            return retry;
+        }
+
+        DatabaseAction<T> action = batch.get(0);
+        int attempts = flushAttempts.merge(action, 1, Integer::sum);
+        if (attempts < maxFlushAttempts) {
+            LOG.warning("Failed to flush " + action.getType() + " of " + typeName + " " + action.getEntity().getId()
+                + " (attempt " + attempts + "): " + error.getMessage());
+            return batch;
+        }
+        try {
+            RedisManager.get().pushDeadLetter(typeName, new DeadLetter<>(action, attempts, String.valueOf(error.getMessage()), Instant.now()));
+        } catch (Exception e) {
+            LOG.warning("Failed to store dead letter of " + typeName + " " + action.getEntity().getId()
+                + ", keeping it queued: " + e.getMessage());
+            return batch;
+        }
+        flushAttempts.remove(action);
+        LOG.severe("Moved " + action.getType() + " of " + typeName + " " + action.getEntity().getId()
+            + " to the dead letters after " + attempts + " attempts: " + error.getMessage());
+        return List.of();
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JDBCConnectionException || cause instanceof SQLTransientConnectionException
+                || cause instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <A> Map<A, Boolean> identitySet(List<A> values) {
+        Map<A, Boolean> set = new IdentityHashMap<>();
+        for (A value : values) {
+            set.put(value, Boolean.TRUE);
+        }
+        return set;
+    }
+
+    private void commitWriteAheadLog(long logPosition) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null || logPosition <= 0) return;
+        try {
+            log.commit(logPosition);
+        } catch (IOException e) {
+            LOG.warning("Failed to truncate the write-ahead log of " + typeName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the batch in one transaction. Returns {@code null} when it was committed,
+     * otherwise the failure.
+     */
+    private Exception writeBatch(List<DatabaseAction<T>> batch) {
+        try {
+            if (statelessFlush) {
+                writeStateless(batch);
+            } else {
+                writeMerging(batch);
+            }
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
     }
 
-    public void flushUpdates() {
-        List<DatabaseAction<T>> batch = new ArrayList<>();
-        DatabaseAction<T> retry;
-        while ((retry = retryQueue.pollFirst()) != null) {
-            batch.add(retry);
-        }
-        DatabaseAction<T> action;
-        while ((action = updateQueue.poll()) != null) {
-            batch.add(action);
+    /**
+     * Bulk path for flat entity types: one upsert per SAVE and one {@code DELETE ... IN}
+     * statement per chunk of DELETEs, JDBC-batched in a stateless session, so no entity is
+     * read back before being written.
+     */
+    private void writeStateless(List<DatabaseAction<T>> batch) throws Exception {
+        try (StatelessSession session = SessionManager.get().getStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                List<Object> deletedIds = new ArrayList<>();
+                for (DatabaseAction<T> item : batch) {
+                    switch (item.getType()) {
+                        case SAVE -> session.upsert(item.getEntity());
+                        case DELETE -> deletedIds.add(item.getEntity().getId());
+                    }
+                }
+                if (!deletedIds.isEmpty()) {
+                    String hql = "DELETE FROM " + type.getName() + " e WHERE e."
+                        + EntitySchema.of(type).idProperty().name() + " IN (:ids)";
+                    for (int from = 0; from < deletedIds.size(); from += DELETE_CHUNK_SIZE) {
+                        session.createMutationQuery(hql)
+                            .setParameterList("ids", deletedIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, deletedIds.size())))
+                            .executeUpdate();
+                    }
+                }
+                transaction.commit();
+            } catch (Exception e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
         }
-        if (batch.isEmpty()) return;
+    }
 
-        try (Session session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+    /**
+     * Path for types whose writes must cascade or update collections: each action is merged
+     * in a regular session.
+     */
+    private void writeMerging(List<DatabaseAction<T>> batch) throws Exception {
+        int chunkSize = SessionManager.get().getJdbcBatchSize();
+        try (Session session = SessionManager.get().getSession()) {
             Transaction transaction = session.beginTransaction();
             try {
                 int count = 0;
@@ -118,7 +1497,7 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
                         }
                     }
                     count++;
-                    if (count % 20 == 0) {
+                    if (count % chunkSize == 0) {
                         session.flush();
                         session.clear();
                     }
@@ -128,33 +1507,455 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
                 if (transaction.isActive()) {
                     transaction.rollback();
                 }
-                for (int i = batch.size() - 1; i >= 0; i--) {
-                    retryQueue.addFirst(batch.get(i));
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Whether SAVE and DELETE of {@code type} can skip the persistence context: the type has
+     * an id, no collection or cascading relation whose writes {@code merge} would propagate,
+     * and no version column to check.
+     */
+    private static boolean supportsStatelessFlush(Class<?> type) {
+        EntitySchema schema = EntitySchema.of(type);
+        if (schema.idProperty() == null) return false;
+        for (EntitySchema.Property property : schema.properties()) {
+            Field field = property.field();
+            if (property.kind() == EntitySchema.Kind.COLLECTION
+                || field.isAnnotationPresent(ElementCollection.class)
+                || field.isAnnotationPresent(Version.class)) {
+                return false;
+            }
+            ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+            if (manyToOne != null && manyToOne.cascade().length > 0) return false;
+            OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+            if (oneToOne != null && (oneToOne.cascade().length > 0 || oneToOne.orphanRemoval())) return false;
+        }
+        return true;
+    }
+
+    // --- DEAD LETTERS ---
+
+    /**
+     * Sets how many times a single failing action is tried before it is moved to the dead
+     * letters.
+     */
+    public GenericCachedRepository<T> setMaxFlushAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be >= 1");
+        }
+        this.maxFlushAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Actions that kept failing to flush, oldest first. They are stored in Redis, so they
+     * survive a restart and are shared by every node.
+     */
+    public List<DeadLetter<T>> getDeadLetters() {
+        List<DeadLetter<T>> letters = new ArrayList<>(RedisManager.get().findDeadLetters(typeName, type, -1));
+        letters.removeIf(Objects::isNull);
+        return letters;
+    }
+
+    public int getDeadLetterCount() {
+        return (int) RedisManager.get().countDeadLetters(typeName);
+    }
+
+    /**
+     * Queues every dead letter again, for instance once the offending data or constraint is
+     * fixed. A dead letter whose entity has a newer write pending is dropped, as that write
+     * supersedes it, and so is one that can no longer be decoded. Letters are removed from
+     * Redis only once queued again.
+     */
+    public void replayDeadLetters() {
+        start();
+        List<DeadLetter<T>> letters = RedisManager.get().findDeadLetters(typeName, type, -1);
+        int replayed = 0;
+        try {
+            for (DeadLetter<T> letter : letters) {
+                if (letter == null) {
+                    LOG.warning("Dropping unreadable dead letter of " + typeName);
+                } else {
+                    replay(letter.action());
+                }
+                replayed++;
+            }
+        } finally {
+            RedisManager.get().removeDeadLetters(typeName, replayed);
+        }
+    }
+
+    private void replay(DatabaseAction<T> action) {
+        if (hasPendingWrite(action.getEntity().getId())) return;
+        if (enqueue(action) < 0) {
+            switch (action.getType()) {
+                case SAVE -> super.save(action.getEntity());
+                case DELETE -> super.delete(action.getEntity());
+            }
+        }
+    }
+
+    public void clearDeadLetters() {
+        RedisManager.get().removeDeadLetters(typeName, -1);
+    }
+
+    /**
+     * Counter deltas that kept failing to reach the database, oldest first. The cached
+     * entities still include them.
+     */
+    public List<DeadDeltas> getDeadDeltas() {
+        List<DeadDeltas> deadDeltas = new ArrayList<>(RedisManager.get().findDeadDeltas(typeName));
+        deadDeltas.removeIf(Objects::isNull);
+        return deadDeltas;
+    }
+
+    /**
+     * Records every dead counter delta again, to be applied by the next flush, for instance
+     * once the offending row is fixed.
+     */
+    public void replayDeadDeltas() {
+        start();
+        List<DeadDeltas> found = RedisManager.get().findDeadDeltas(typeName);
+        int replayed = 0;
+        try {
+            for (DeadDeltas deadDeltas : found) {
+                if (deadDeltas == null) {
+                    LOG.warning("Dropping unreadable dead counter deltas of " + typeName);
+                } else {
+                    RedisManager.get().restoreDeltas(typeName, deadDeltas.id(), deadDeltas.deltas());
+                }
+                replayed++;
+            }
+        } finally {
+            RedisManager.get().removeDeadDeltas(typeName, replayed);
+        }
+        deltasRecorded.set(true);
+    }
+
+    public void clearDeadDeltas() {
+        RedisManager.get().removeDeadDeltas(typeName, -1);
+    }
+
+    /**
+     * The write queued for {@code id}, newer than its row, or {@code null}. Database loads
+     * defer to it, so that a row deleted or changed but not flushed yet is not cached again.
+     */
+    private DatabaseAction<T> pendingWrite(Object id) {
+        Object key = prepareEntityId(String.valueOf(id));
+        pendingLock.lock();
+        try {
+            return pendingWrites.get(key);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    private T fromPendingWrite(DatabaseAction<T> pending) {
+        if (pending.getType() == DatabaseAction.Type.DELETE) {
+            return null;
+        }
+        writeToCache(pending.getEntity(), false);
+        T cached = RedisManager.get().find(cacheKeyPrefix + pending.getEntity().getId(), type);
+        return cached != null ? resolveRelations(cached) : pending.getEntity();
+    }
+
+    private boolean hasPendingWrite(Object id) {
+        if (id == null) return false;
+        pendingLock.lock();
+        try {
+            return pendingWrites.containsKey(id);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    // --- WARM-UP ---
+
+    /**
+     * Sets how many rows each warm-up query reads. Takes effect on the next {@link #warmUp()}.
+     */
+    public GenericCachedRepository<T> setWarmUpChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        }
+        this.warmUpChunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets how long the warm-up marker of the type lives in Redis, one day by default. Until
+     * it expires, starting a repository of the type on any node skips the warm-up; the first
+     * receiver to start afterwards reconciles the cache with the table. {@code null} keeps
+     * the marker forever, leaving reconciliation to {@link #rewarm}.
+     */
+    public GenericCachedRepository<T> setWarmUpMarkerTtl(Duration ttl) {
+        if (ttl != null && ttl.toSeconds() < 1) {
+            throw new IllegalArgumentException("ttl must be at least one second");
+        }
+        this.warmUpMarkerTtl = ttl;
+        return this;
+    }
+
+    public WarmUpState getWarmUpState() {
+        return warmUpState;
+    }
+
+    public boolean isWarm() {
+        return warmUpState == WarmUpState.READY;
+    }
+
+    /**
+     * Number of rows read from the database by the current or last warm-up.
+     */
+    public long getWarmedEntityCount() {
+        return warmedEntities.get();
+    }
+
+    /**
+     * Starts the repository if needed, waits up to {@code timeout} for the warm-up to finish
+     * and returns whether the cache is ready. A failed warm-up returns {@code false}
+     * immediately.
+     */
+    public boolean awaitWarmUp(Duration timeout) throws InterruptedException {
+        start();
+        try {
+            warmUpDone.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+        return isWarm();
+    }
+
+    /**
+     * Loads the table into Redis, called by the action pool when the repository starts. Rows are
+     * read in chunks ordered by id, each query resuming after the last id of the previous
+     * one, and each chunk is written with one pipelined round trip. Skipped when the type is
+     * already marked warm in Redis or has a {@link CacheBudget}, and when a warm-up of this
+     * repository is already running.
+     *
+     * <p>Other nodes only add missing entries, since the cached ones may be newer than the
+     * row. The receiver, which knows every write not yet flushed, reconciles the cache with
+     * the table instead, like {@link #rewarm}.
+     */
+    public void warmUp() {
+        if (!warmUpLock.tryLock()) {
+            return;
+        }
+        load(false);
+    }
+
+    /**
+     * Reloads the table into Redis even though the type is marked warm, on the receiver, for
+     * instance after rows were changed in SQL behind the cache. Cached entries are replaced
+     * by their row and entries whose row is gone are removed, except those with a write or
+     * counter delta not yet flushed and those written while the reload runs. Waits for a
+     * running warm-up, then reloads; the flusher pauses while each chunk is read and written.
+     */
+    public void rewarm() {
+        if (!RedisManager.get().isReceiver()) {
+            throw new IllegalStateException("Only the receiver can re-warm " + typeName);
+        }
+        if (RedisManager.get().getCacheBudget(type) != null) {
+            throw new IllegalStateException(typeName + " has a cache budget and is never warmed up");
+        }
+        start();
+        warmUpLock.lock();
+        load(true);
+    }
+
+    /**
+     * Runs a warm-up, with {@link #warmUpLock} held by the caller, and releases it.
+     */
+    private void load(boolean force) {
+        if (warmUpDone.isDone()) {
+            warmUpDone = new CompletableFuture<>();
+        }
+        warmUpState = WarmUpState.RUNNING;
+        warmedEntities.set(0);
+        long start = System.nanoTime();
+        try {
+            if (RedisManager.get().getCacheBudget(type) == null && (force || !RedisManager.get().isWarm(typeName))) {
+                EntitySchema.Property idProperty = EntitySchema.of(type).idProperty();
+                if (idProperty == null) {
+                    throw new IllegalStateException("Cannot warm up " + typeName + ": no id field");
+                }
+                boolean reconcile = RedisManager.get().isReceiver();
+                Set<String> loaded = new HashSet<>();
+                int chunkSize = warmUpChunkSize;
+                Object lastId = null;
+                List<T> chunk;
+                do {
+                    if (reconcile) {
+                        chunk = reconcileWarmUpChunk(idProperty.name(), lastId, chunkSize);
+                        for (T entity : chunk) {
+                            loaded.add(String.valueOf(entity.getId()));
+                        }
+                    } else {
+                        chunk = loadWarmUpChunk(idProperty.name(), lastId, chunkSize);
+                        cacheWarmUpChunk(chunk);
+                    }
+                    if (!chunk.isEmpty()) {
+                        warmedEntities.addAndGet(chunk.size());
+                        lastId = chunk.get(chunk.size() - 1).getId();
+                    }
+                } while (chunk.size() == chunkSize);
+                if (reconcile) {
+                    removeVanished(loaded);
+                }
+                RedisManager.get().markWarm(typeName, warmUpMarkerTtl);
+                LOG.info("Warmed up " + warmedEntities.get() + " " + typeName + " entities in "
+                    + Duration.ofNanos(System.nanoTime() - start).toMillis() + " ms");
+            }
+            warmUpState = WarmUpState.READY;
+            warmUpDone.complete(null);
+        } catch (RuntimeException e) {
+            warmUpState = WarmUpState.FAILED;
+            warmUpDone.completeExceptionally(e);
+            LOG.warning("Failed to warm up " + typeName + ": " + e.getMessage());
+        } finally {
+            deletedDuringWarmUp.clear();
+            savedDuringWarmUp.clear();
+            warmUpLock.unlock();
+        }
+    }
+
+    private List<T> loadWarmUpChunk(String idField, Object lastId, int chunkSize) {
+        try (Session session = SessionManager.get().getSession()) {
+            String hql = "FROM " + type.getName() + " e"
+                + (lastId != null ? " WHERE e." + idField + " > :lastId" : "")
+                + " ORDER BY e." + idField;
+            var query = session.createQuery(hql, type).setMaxResults(chunkSize);
+            if (lastId != null) {
+                query.setParameter("lastId", lastId);
+            }
+            return query.list();
+        }
+    }
+
+    /**
+     * Reads a chunk and replaces its cached entries, holding the flush lock so that no flush
+     * commits between the read and the write, and the snapshot lock while writing so that
+     * every save either is already queued, and skipped, or lands after the chunk. The chunk
+     * is read again, after releasing the flush lock, when a save writing through holds the
+     * snapshot lock.
+     */
+    private List<T> reconcileWarmUpChunk(String idField, Object lastId, int chunkSize) {
+        while (true) {
+            flushLock.lock();
+            try {
+                List<T> chunk = loadWarmUpChunk(idField, lastId, chunkSize);
+                if (!tryLockSnapshot()) continue;
+                Map<Object, T> fresh = new LinkedHashMap<>();
+                List<String> replaced;
+                try {
+                    for (T entity : chunk) {
+                        if (!hasPendingWrite(entity.getId()) && !deletedDuringWarmUp.contains(String.valueOf(entity.getId()))) {
+                            fresh.put(entity.getId(), entity);
+                        }
+                    }
+                    replaced = RedisManager.get().replaceMembers(typeName, fresh);
+                } finally {
+                    snapshotLock.writeLock().unlock();
+                }
+                Map<String, T> byId = new HashMap<>();
+                for (T entity : fresh.values()) {
+                    byId.put(String.valueOf(entity.getId()), entity);
+                }
+                Map<String, T> written = new LinkedHashMap<>();
+                for (String id : replaced) {
+                    written.put(id, byId.get(id));
+                    invalidateNearCaches(cacheKeyPrefix + id);
+                }
+                index.reindex(written);
+                return chunk;
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the cached entries whose row was not {@code loaded}, unless they have a write
+     * or counter delta not yet flushed or were written during the warm-up.
+     */
+    private void removeVanished(Set<String> loaded) {
+        while (true) {
+            flushLock.lock();
+            try {
+                Set<String> vanished = RedisManager.get().findMemberIds(typeName);
+                vanished.removeAll(loaded);
+                if (vanished.isEmpty()) return;
+                vanished.removeAll(RedisManager.get().findDeltaIds(typeName));
+                if (!tryLockSnapshot()) continue;
+                try {
+                    pendingLock.lock();
+                    try {
+                        for (Object id : pendingWrites.keySet()) {
+                            vanished.remove(String.valueOf(id));
+                        }
+                    } finally {
+                        pendingLock.unlock();
+                    }
+                    vanished.removeAll(savedDuringWarmUp);
+                    for (String id : vanished) {
+                        evictFromCache(id);
+                    }
+                    return;
+                } finally {
+                    snapshotLock.writeLock().unlock();
                 }
-                LOG.warning("Failed to flush updates for " + type.getSimpleName() + ": " + e.getMessage());
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private boolean tryLockSnapshot() {
+        try {
+            return snapshotLock.writeLock().tryLock(SNAPSHOT_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while warming up " + typeName, e);
+        }
+    }
+
+    private void cacheWarmUpChunk(List<T> chunk) {
+        if (chunk.isEmpty()) return;
+        Map<Object, T> fresh = new LinkedHashMap<>();
+        for (T entity : chunk) {
+            if (!deletedDuringWarmUp.contains(String.valueOf(entity.getId()))) {
+                fresh.put(entity.getId(), entity);
+            }
+        }
+        Map<Object, T> written = new LinkedHashMap<>();
+        for (Object id : RedisManager.get().saveMembersIfAbsent(typeName, fresh)) {
+            if (deletedDuringWarmUp.contains(String.valueOf(id))) {
+                RedisManager.get().deleteMember(typeName, id, false);
+            } else {
+                written.put(id, fresh.get(id));
             }
         }
+        index.backfill(written);
     }
 
     @Override
     public List<T> all() {
+        start();
+        if (!cachesWholeType()) {
+            return super.all();
+        }
         List<T> entities = getAllFromCache();
 
         if (entities != null && !entities.isEmpty()) {
-            List<T> resolvedEntities = new ArrayList<>();
-            for (T entity : entities) {
-                T resolvedEntity = resolveRelations(entity);
-                if (resolvedEntity != null) {
-                    resolvedEntities.add(resolvedEntity);
-                }
-            }
-            return resolvedEntities;
+            return resolveRelations(entities);
         }
 
         entities = super.all();
         if (entities != null && !entities.isEmpty()) {
             for (T entity : entities) {
-                RedisManager.get().save(cacheKeyPrefix + entity.getId(), entity);
+                writeToCache(entity, false);
             }
             return entities;
         } else {
@@ -164,41 +1965,139 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
 
     // --- QUERY BUILDER EXECUTION (cache-first) ---
 
+    /**
+     * Queries and counts answered from the cache decode their candidates, resolve their
+     * relations, filter and sort them in parallel on the {@link #setParallelQueryPool query
+     * pool} once there are at least {@code threshold} of them (50 000 by default); below that
+     * the split costs more than it saves. {@code 0} keeps every evaluation sequential.
+     * Results, their order and offset/limit are the same either way.
+     */
+    public GenericCachedRepository<T> setParallelQueryThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must be >= 0");
+        }
+        this.parallelQueryThreshold = threshold;
+        return this;
+    }
+
+    public int getParallelQueryThreshold() {
+        return parallelQueryThreshold;
+    }
+
+    /**
+     * Sets the pool that runs parallel query evaluations, {@code null} for the one shared by
+     * every repository, sized to the available processors. Relation loading blocks on Redis
+     * and the database, which is why it is not the common ForkJoin pool.
+     */
+    public GenericCachedRepository<T> setParallelQueryPool(ForkJoinPool pool) {
+        this.parallelQueryPool = pool;
+        return this;
+    }
+
+    public ForkJoinPool getParallelQueryPool() {
+        ForkJoinPool pool = parallelQueryPool;
+        return pool != null ? pool : SharedQueryPool.POOL;
+    }
+
+    private static final class SharedQueryPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs {@code terminal} over the candidates of an in-memory evaluation, as a parallel
+     * stream on the query pool when there are enough. The stream stays ordered, so a stable
+     * sort, skip and limit behave as sequentially.
+     */
+    private <R> R evaluate(List<T> candidates, Function<Stream<T>, R> terminal) {
+        int threshold = parallelQueryThreshold;
+        if (threshold <= 0 || candidates.size() < threshold) {
+            return terminal.apply(candidates.stream());
+        }
+        return getParallelQueryPool().submit(() -> terminal.apply(candidates.parallelStream())).join();
+    }
+
     @Override
     protected List<T> executeQueryWithLimit(QueryBuilder<T> builder, int explicitLimit) {
-        if (builder.hasRawConditions()) {
-            return super.executeQueryWithLimit(builder, explicitLimit);
+        start();
+        Duration ttl = queryCacheTtl;
+        if (ttl == null) {
+            return runQuery(builder, explicitLimit);
+        }
+        String fingerprint = builder.fingerprint(explicitLimit);
+        RedisManager.QueryResult cached = RedisManager.get().findQueryResult(typeName, fingerprint);
+        if (cached.ids() != null) {
+            List<T> hit = loadInOrder(cached.ids());
+            if (hit != null) {
+                queryCacheHits.incrementAndGet();
+                return hit;
+            }
         }
+        List<T> result = runQuery(builder, explicitLimit);
+        List<String> ids = new ArrayList<>(result.size());
+        for (T entity : result) {
+            ids.add(String.valueOf(entity.getId()));
+        }
+        RedisManager.get().saveQueryResult(typeName, fingerprint, cached.version(), ids, ttl);
+        return result;
+    }
 
-        List<T> cached = getAllFromCache();
-        if (cached != null && !cached.isEmpty()) {
-            Stream<T> stream = cached.stream();
+    /**
+     * Loads the entities of a cached query result in its order, or returns {@code null} when
+     * one of them no longer exists.
+     */
+    private List<T> loadInOrder(List<String> ids) {
+        List<Object> typedIds = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            typedIds.add(prepareEntityId(id));
+        }
+        Map<String, T> byId = new HashMap<>();
+        for (T entity : findAllById(typedIds)) {
+            byId.put(String.valueOf(entity.getId()), entity);
+        }
+        List<T> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            T entity = byId.get(id);
+            if (entity == null) return null;
+            ordered.add(entity);
+        }
+        return ordered;
+    }
 
-            for (QueryBuilder.Condition condition : builder.getConditions()) {
-                stream = stream.filter(entity -> matchesCondition(entity, condition));
-            }
+    private List<T> runQuery(QueryBuilder<T> builder, int explicitLimit) {
+        if (builder.hasRawConditions() || !cachesWholeType()) {
+            return super.executeQueryWithLimit(builder, explicitLimit);
+        }
 
-            stream = stream.map(this::resolveRelations).filter(Objects::nonNull);
+        List<T> page = loadOrderedPage(builder, explicitLimit);
+        if (page != null) {
+            return page;
+        }
 
-            if (!builder.getOrderBys().isEmpty()) {
-                stream = stream.sorted(buildComparator(builder.getOrderBys()));
-            }
+        List<T> cached = loadCandidates(builder);
+        if (cached != null) {
+            List<T> result = evaluate(cached, candidates -> {
+                Stream<T> stream = candidates.filter(entity -> matchesAll(entity, builder.getConditions()));
 
-            if (builder.getOffset() > 0) {
-                stream = stream.skip(builder.getOffset());
-            }
-            if (explicitLimit > 0) {
-                stream = stream.limit(explicitLimit);
-            }
+                if (!builder.getOrderBys().isEmpty()) {
+                    stream = stream.sorted(buildComparator(builder.getOrderBys()));
+                }
 
-            return stream.collect(Collectors.toList());
+                if (builder.getOffset() > 0) {
+                    stream = stream.skip(builder.getOffset());
+                }
+                if (explicitLimit > 0) {
+                    stream = stream.limit(explicitLimit);
+                }
+                return stream.collect(Collectors.toList());
+            });
+            return resolveRelations(result);
         }
 
         List<T> dbResults = super.executeQueryWithLimit(builder, explicitLimit);
         if (dbResults != null) {
             for (T entity : dbResults) {
-                if (entity instanceof IdentifiableEntity ie && ie.getId() != null) {
-                    RedisManager.get().save(cacheKeyPrefix + ie.getId(), entity);
+                if (entity.getId() != null) {
+                    writeToCache(entity, false);
                 }
             }
         }
@@ -207,47 +2106,45 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
 
     @Override
     protected long executeCount(QueryBuilder<T> builder) {
-        if (builder.hasRawConditions()) {
+        start();
+        if (builder.hasRawConditions() || !cachesWholeType()) {
             return super.executeCount(builder);
         }
 
-        List<T> cached = getAllFromCache();
-        if (cached != null && !cached.isEmpty()) {
-            return cached.stream()
-                .filter(entity -> {
-                    for (QueryBuilder.Condition c : builder.getConditions()) {
-                        if (!matchesCondition(entity, c)) return false;
-                    }
-                    return true;
-                })
-                .count();
+        if (builder.getConditions().isEmpty()) {
+            long cachedCount = RedisManager.get().countMembers(typeName);
+            return cachedCount > 0 ? cachedCount : super.executeCount(builder);
+        }
+
+        List<T> cached = loadCandidates(builder);
+        if (cached != null) {
+            return evaluate(cached, candidates -> candidates
+                .filter(entity -> matchesAll(entity, builder.getConditions()))
+                .count());
         }
         return super.executeCount(builder);
     }
 
     @Override
     protected int executeDelete(QueryBuilder<T> builder) {
-        List<Object> matchedIds = new ArrayList<>();
-        List<T> cached = getAllFromCache();
+        start();
+        List<T> matched = new ArrayList<>();
+        List<T> cached = loadCandidates(builder);
         if (cached != null) {
             for (T entity : cached) {
-                boolean matches = true;
-                for (QueryBuilder.Condition c : builder.getConditions()) {
-                    if (!matchesCondition(entity, c)) {
-                        matches = false;
-                        break;
-                    }
-                }
-                if (matches && entity.getId() != null) {
-                    matchedIds.add(entity.getId());
+                if (entity.getId() != null && matchesAll(entity, builder.getConditions())) {
+                    matched.add(entity);
                 }
             }
         }
 
+        long logPosition = replacePendingWrites(matched);
         int deleted = super.executeDelete(builder);
-        for (Object id : matchedIds) {
-            RedisManager.get().delete(cacheKeyPrefix + id);
+        for (T entity : matched) {
+            evictFromCache(entity.getId());
         }
+        awaitDurable(logPosition);
+        RedisManager.get().bumpQueryVersion(typeName);
         return deleted;
     }
 
@@ -326,118 +2223,106 @@ public class GenericCachedRepository<T extends IdentifiableEntity> extends Gener
     // --- REFLECTION UTILITIES ---
 
     private Object getFieldValue(Object entity, String fieldName) {
+        EntitySchema.Property property = EntitySchema.of(type).property(fieldName);
+        if (property == null) return null;
         try {
-            Field field = findField(entity.getClass(), fieldName);
-            if (field == null) return null;
-            field.setAccessible(true);
-            return field.get(entity);
+            return property.get(entity);
         } catch (Exception e) {
             return null;
         }
     }
 
     /**
-     * Resolves {@code @OneToMany} collections (stored as id lists in Redis). For
-     * {@code @ManyToOne} / {@code @OneToOne}, RedisManager.reconstructEntity already
-     * resolves the referenced entity, so the field may already hold the target entity
-     * (or null). We guard against the historical bug where the field was treated as
-     * holding an ID while actually holding the resolved entity.
+     * Resolves relation fields that still hold raw ids instead of entities. RedisManager
+     * already hands back resolved relations, so this is a safety net for entities built
+     * elsewhere. Ids are gathered across {@code entities} and loaded with one
+     * {@code findAllById} per related repository.
      */
-    private T resolveRelations(T entity) {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<T> resolveRelations(List<T> entities) {
+        List<EntitySchema.Property> relations = new ArrayList<>();
+        for (EntitySchema.Property property : EntitySchema.of(type).properties()) {
+            if (property.kind() != EntitySchema.Kind.VALUE && property.target() != null) {
+                relations.add(property);
+            }
+        }
+        if (relations.isEmpty() || entities.isEmpty()) return entities;
+
         try {
-            HashMap<Class<?>, GenericRepository<?>> repoCache = new HashMap<>();
-            for (Field field : entity.getClass().getDeclaredFields()) {
-                field.setAccessible(true);
-                if (field.isAnnotationPresent(OneToMany.class)) {
-                    Object raw = field.get(entity);
-                    if (raw instanceof Collection<?> ids && !ids.isEmpty() && isIdCollection(field, ids)) {
-                        Collection<Object> resolvedEntities = new ArrayList<>();
-                        for (Object id : ids) {
-                            String repositoryName = guessRepositoryName(field);
-                            GenericRepository<?> repository = repoCache.computeIfAbsent(
-                                    field.getType(),
-                                    k -> RepositoryRegistry.get().getRepository(repositoryName)
-                            );
-                            if (repository != null) {
-                                Object resolvedEntity = repository.findById(id);
-                                if (resolvedEntity != null) {
-                                    resolvedEntities.add(resolvedEntity);
-                                }
-                            }
-                        }
-                        field.set(entity, resolvedEntities);
+            Map<Class<?>, Set<Object>> wanted = new HashMap<>();
+            for (T entity : entities) {
+                for (EntitySchema.Property property : relations) {
+                    for (Object id : rawIds(property, property.get(entity))) {
+                        wanted.computeIfAbsent(property.target(), t -> new LinkedHashSet<>()).add(id);
                     }
-                } else if (field.isAnnotationPresent(ManyToOne.class) ||
-                         field.isAnnotationPresent(OneToOne.class)) {
-                    Object value = field.get(entity);
-                    if (value == null) continue;
+                }
+            }
+            if (wanted.isEmpty()) return entities;
 
-                    if (field.getType().isInstance(value)) {
-                        continue;
-                    }
+            Map<Class<?>, Map<String, Object>> loaded = new HashMap<>();
+            for (Map.Entry<Class<?>, Set<Object>> entry : wanted.entrySet()) {
+                Class<?> target = entry.getKey();
+                GenericRepository repository = RepositoryRegistry.get().getRepository(target.getSimpleName().toLowerCase() + "s");
+                if (repository == null) continue;
+
+                List<Object> ids = new ArrayList<>(entry.getValue().size());
+                for (Object id : entry.getValue()) {
+                    ids.add(repository.prepareEntityId(String.valueOf(id)));
+                }
+                EntitySchema schema = EntitySchema.of(target);
+                Map<String, Object> byId = new HashMap<>();
+                for (Object related : (List<Object>) repository.findAllById(ids)) {
+                    byId.put(String.valueOf(schema.idOf(related)), related);
+                }
+                loaded.put(target, byId);
+            }
+
+            for (T entity : entities) {
+                for (EntitySchema.Property property : relations) {
+                    Map<String, Object> byId = loaded.get(property.target());
+                    Object value = property.get(entity);
+                    if (byId == null || rawIds(property, value).isEmpty()) continue;
 
-                    String repositoryName = field.getType().getSimpleName().toLowerCase() + "s";
-                    GenericRepository<?> repository = repoCache.computeIfAbsent(
-                            field.getType(),
-                            k -> RepositoryRegistry.get().getRepository(repositoryName)
-                    );
-                    if (repository != null) {
-                        Object resolvedEntity = repository.findById(value);
-                        if (resolvedEntity != null) {
-                            field.set(entity, resolvedEntity);
+                    if (property.kind() == EntitySchema.Kind.REFERENCE) {
+                        Object related = byId.get(String.valueOf(value));
+                        if (related != null) {
+                            property.set(entity, related);
                         }
+                    } else {
+                        Collection<Object> related = property.newCollection();
+                        for (Object item : (Collection<?>) value) {
+                            Object resolved = property.target().isInstance(item) ? item : byId.get(String.valueOf(item));
+                            if (resolved != null) {
+                                related.add(resolved);
+                            }
+                        }
+                        property.set(entity, related);
                     }
                 }
             }
-            return entity;
         } catch (Exception e) {
             LOG.warning("Failed to resolve relations for " + type.getSimpleName() + ": " + e.getMessage());
-            return null;
-        }
-    }
-
-    /**
-     * Heuristic: an {@code @OneToMany} collection holds raw IDs (from Redis) if the
-     * first element is not an instance of the field's generic element type.
-     */
-    private boolean isIdCollection(Field field, Collection<?> values) {
-        Class<?> element = resolveCollectionElementType(field);
-        if (element == null) return true;
-        for (Object v : values) {
-            if (v == null) continue;
-            return !element.isInstance(v);
         }
-        return false;
+        return entities;
     }
 
-    private Class<?> resolveCollectionElementType(Field field) {
-        java.lang.reflect.Type genericType = field.getGenericType();
-        if (genericType instanceof java.lang.reflect.ParameterizedType pt) {
-            java.lang.reflect.Type[] args = pt.getActualTypeArguments();
-            if (args.length == 1 && args[0] instanceof Class<?> c) {
-                return c;
-            }
-        }
-        return null;
+    private T resolveRelations(T entity) {
+        return resolveRelations(List.of(entity)).get(0);
     }
 
-    private String guessRepositoryName(Field field) {
-        Class<?> element = resolveCollectionElementType(field);
-        if (element != null) {
-            return element.getSimpleName().toLowerCase() + "s";
+    private List<Object> rawIds(EntitySchema.Property property, Object value) {
+        if (value == null) return List.of();
+        if (property.kind() == EntitySchema.Kind.REFERENCE) {
+            return property.target().isInstance(value) ? List.of() : List.of(value);
         }
-        return field.getName();
-    }
-
-    private Field findField(Class<?> clazz, String fieldName) {
-        if (clazz == null || fieldName == null) return null;
-        try {
-            return clazz.getDeclaredField(fieldName);
-        } catch (NoSuchFieldException e) {
-            if (clazz.getSuperclass() != null) {
-                return findField(clazz.getSuperclass(), fieldName);
+        if (!(value instanceof Collection<?> values)) return List.of();
+        List<Object> ids = new ArrayList<>();
+        for (Object item : values) {
+            if (item != null && !property.target().isInstance(item)) {
+                ids.add(item);
             }
         }
-        return null;
+        return ids;
     }
+
 }
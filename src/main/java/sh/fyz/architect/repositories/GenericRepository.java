@@ -1,25 +1,23 @@
 package sh.fyz.architect.repositories;
 
+import sh.fyz.architect.cache.EntitySchema;
 import sh.fyz.architect.persistent.SessionManager;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
 public class GenericRepository<T> {
     protected final Class<T> type;
 
-    private static final ConcurrentHashMap<Class<?>, Set<String>> VALID_FIELDS_CACHE = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<Class<?>, Field> ID_FIELD_CACHE = new ConcurrentHashMap<>();
-
     public GenericRepository(Class<T> type) {
         this.type = type;
     }
@@ -44,26 +42,18 @@ public class GenericRepository<T> {
     }
 
     // --- FIELD VALIDATION ---
+    // Field lookups go through the EntitySchema of the type, built once and shared with the
+    // cache layer.
 
     protected Set<String> getValidFieldNames() {
-        return VALID_FIELDS_CACHE.computeIfAbsent(type, clazz -> {
-            Set<String> names = ConcurrentHashMap.newKeySet();
-            Class<?> current = clazz;
-            while (current != null && current != Object.class) {
-                for (Field f : current.getDeclaredFields()) {
-                    names.add(f.getName());
-                }
-                current = current.getSuperclass();
-            }
-            return names;
-        });
+        return EntitySchema.of(type).propertyNames();
     }
 
     protected void validateFieldName(String fieldName) {
         if (fieldName == null || fieldName.isEmpty()) {
             throw new IllegalArgumentException("Field name must not be null or empty");
         }
-        if (!getValidFieldNames().contains(fieldName)) {
+        if (EntitySchema.of(type).property(fieldName) == null) {
             throw new IllegalArgumentException(
                 "Invalid field name '" + fieldName + "' for entity " + type.getSimpleName()
             );
@@ -72,20 +62,15 @@ public class GenericRepository<T> {
 
     // --- ID PREPARATION ---
 
-    private Field getIdField(Class<?> clazz) {
-        return ID_FIELD_CACHE.computeIfAbsent(clazz, c -> {
-            try {
-                return c.getDeclaredField("id");
-            } catch (NoSuchFieldException e) {
-                return null;
-            }
-        });
+    private EntitySchema.Property getIdProperty() {
+        EntitySchema schema = EntitySchema.of(type);
+        return schema.idProperty() != null ? schema.idProperty() : schema.property("id");
     }
 
     public Object prepareEntityId(String value) {
-        Field field = getIdField(type);
-        if (field == null) return value;
-        Class<?> fieldType = field.getType();
+        EntitySchema.Property property = getIdProperty();
+        if (property == null) return value;
+        Class<?> fieldType = property.field().getType();
         if (fieldType == Long.class || fieldType == long.class) {
             return Long.parseLong(value);
         } else if (fieldType == UUID.class) {
@@ -141,6 +126,21 @@ public class GenericRepository<T> {
         }
     }
 
+    /**
+     * Loads the entities with the given ids in a single {@code IN} query. Unknown ids are
+     * skipped, and the result order is unspecified.
+     */
+    public List<T> findAllById(Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (Session session = SessionManager.get().getSession()) {
+            return session.createQuery("FROM " + type.getName() + " e WHERE e.id IN (:ids)", type)
+                .setParameterList("ids", ids)
+                .list();
+        }
+    }
+
     public void findByIdAsync(Object id, Consumer<T> callback, Consumer<Exception> errorCallback) {
         threadPool().submit(() -> {
             try {
@@ -1,10 +1,16 @@
 package sh.fyz.architect.repositories;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 
 public class QueryBuilder<T> {
@@ -179,4 +185,55 @@ public class QueryBuilder<T> {
     boolean hasRawConditions() {
         return !rawConditions.isEmpty();
     }
+
+    /**
+     * Hash identifying what this query returns when run with {@code limit}: conditions and
+     * raw fragments are AND-ed, so their order is ignored, as is the order of {@code IN}
+     * values; sorting and pagination are kept as given. Values are described with their
+     * class, so {@code 1} and {@code "1"} differ.
+     */
+    String fingerprint(int limit) {
+        List<String> wheres = new ArrayList<>();
+        for (Condition condition : conditions) {
+            wheres.add("c" + describe(condition.field()) + condition.operator() + describe(condition.value()));
+        }
+        for (RawCondition raw : rawConditions) {
+            StringBuilder where = new StringBuilder("r").append(describe(raw.hqlFragment()));
+            for (Map.Entry<String, Object> parameter : new TreeMap<>(raw.parameters()).entrySet()) {
+                where.append(describe(parameter.getKey())).append(describe(parameter.getValue()));
+            }
+            wheres.add(where.toString());
+        }
+        Collections.sort(wheres);
+
+        StringBuilder query = new StringBuilder();
+        wheres.forEach(where -> query.append(where).append(';'));
+        for (OrderBy orderBy : orderBys) {
+            query.append('o').append(describe(orderBy.field())).append(orderBy.order()).append(';');
+        }
+        query.append("l").append(limit).append(";f").append(offset);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(query.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Unambiguous description of a value: its class, then its length-prefixed text.
+     */
+    private static String describe(Object value) {
+        if (value == null) return "~";
+        if (value instanceof Collection<?> values) {
+            List<String> items = new ArrayList<>();
+            for (Object item : values) {
+                items.add(describe(item));
+            }
+            Collections.sort(items);
+            return "[" + String.join("", items) + "]";
+        }
+        String text = value.toString();
+        return value.getClass().getName() + ":" + text.length() + ":" + text;
+    }
 }
@@ -0,0 +1,116 @@
+package sh.fyz.architect.test;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.*;
+import sh.fyz.architect.Architect;
+import sh.fyz.architect.cache.RedisCredentials;
+import sh.fyz.architect.cache.RedisManager;
+import sh.fyz.architect.persistent.DatabaseCredentials;
+import sh.fyz.architect.persistent.sql.provider.PostgreSQLAuth;
+import sh.fyz.architect.repositories.GenericCachedRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Client-side cache - Lectures locales invalidees par Redis")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ClientSideCacheTest {
+
+    private static final Duration AWAIT = Duration.ofSeconds(10);
+
+    private Architect architect;
+    private GenericCachedRepository<Product> repository;
+
+    @BeforeAll
+    void setup() {
+        String dbHost = System.getenv().getOrDefault("DB_HOST", "localhost");
+        int dbPort = Integer.parseInt(System.getenv().getOrDefault("DB_PORT", "5440"));
+        String dbName = System.getenv().getOrDefault("DB_NAME", "architect_test");
+        String dbUser = System.getenv().getOrDefault("DB_USER", "architect");
+        String dbPass = System.getenv().getOrDefault("DB_PASS", "architect");
+
+        String redisHost = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+        int redisPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6380"));
+        String redisPass = System.getenv().getOrDefault("REDIS_PASS", "architect");
+
+        architect = new Architect()
+            .setReceiver(true)
+            .setDatabaseCredentials(new DatabaseCredentials(
+                new PostgreSQLAuth(dbHost, dbPort, dbName),
+                dbUser, dbPass, 4, 4, "create-drop"
+            ))
+            .setRedisCredentials(new RedisCredentials(
+                redisHost, redisPass, redisPort, 2000, 10
+            ).withClientSideCache(1000));
+        architect.addEntityClass(Product.class);
+        architect.start();
+
+        repository = new GenericCachedRepository<>(Product.class).enableClientSideCache();
+    }
+
+    @AfterAll
+    void teardown() {
+        if (architect != null) {
+            architect.stop();
+        }
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("findById() - Les lectures repetees restent locales et sont invalidees par Redis")
+    void testRepeatedReadsStayLocal() {
+        Product p = repository.save(new Product("Tracked", "Cat", 1.0, 1, true));
+
+        assertEquals("Tracked", repository.findById(p.getId()).getName());
+        long hits = RedisManager.get().getClientSideCacheHitCount();
+        assertEquals("Tracked", repository.findById(p.getId()).getName());
+        assertEquals(hits + 1, RedisManager.get().getClientSideCacheHitCount());
+
+        p.setName("Changed");
+        repository.save(p);
+        Awaitility.await().atMost(AWAIT).until(() -> "Changed".equals(repository.findById(p.getId()).getName()));
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("findById() - Les cles sont reparties sur plusieurs connexions suivies")
+    void testKeysSpreadOverConnections() {
+        assertEquals(4, RedisManager.get().getClientSideCaches().size());
+        for (int i = 0; i < 40; i++) {
+            Product p = repository.save(new Product("Spread" + i, "Cat", 1.0, 1, true));
+            repository.findById(p.getId());
+        }
+        long used = RedisManager.get().getClientSideCaches().stream().filter(c -> c.getSize() > 0).count();
+        assertTrue(used > 1, "only " + used + " connection(s) cached entries");
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("findById() - Les lectures concurrentes aboutissent, en local ou par le pool")
+    void testConcurrentReads() throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(repository.save(new Product("Concurrent" + i, "Cat", 1.0, 1, true)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> reads = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                Product p = products.get(i % products.size());
+                reads.add(executor.submit(() -> p.getName().equals(repository.findById(p.getId()).getName())));
+            }
+            for (Future<Boolean> read : reads) {
+                assertTrue(read.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package sh.fyz.architect.test;
+
+import org.junit.jupiter.api.*;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import sh.fyz.architect.Architect;
+import sh.fyz.architect.cache.RedisCredentials;
+import sh.fyz.architect.cache.RedisManager;
+import sh.fyz.architect.persistent.DatabaseCredentials;
+import sh.fyz.architect.persistent.SessionManager;
+import sh.fyz.architect.persistent.sql.provider.PostgreSQLAuth;
+import sh.fyz.architect.repositories.GenericCachedRepository;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Needs a Redis Cluster whose nodes share the test password, e.g. three primaries started
+ * with {@code redis-server --port 7000 --cluster-enabled yes --requirepass architect} (and
+ * 7001, 7002) then joined with {@code redis-cli -a architect --cluster create}; skipped when
+ * none answers on {@code REDIS_CLUSTER_PORT}.
+ */
+@DisplayName("Cluster - Routage des cles par slot")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ClusterModeTest {
+
+    private Architect architect;
+    private GenericCachedRepository<Product> repository;
+    private String ns;
+    private String redisHost;
+    private int clusterPort;
+    private String redisPass;
+
+    @BeforeAll
+    void setup() {
+        String dbHost = System.getenv().getOrDefault("DB_HOST", "localhost");
+        int dbPort = Integer.parseInt(System.getenv().getOrDefault("DB_PORT", "5440"));
+        String dbName = System.getenv().getOrDefault("DB_NAME", "architect_test");
+        String dbUser = System.getenv().getOrDefault("DB_USER", "architect");
+        String dbPass = System.getenv().getOrDefault("DB_PASS", "architect");
+
+        redisHost = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+        clusterPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_CLUSTER_PORT", "7000"));
+        redisPass = System.getenv().getOrDefault("REDIS_PASS", "architect");
+        Assumptions.assumeTrue(isCluster(), "No Redis Cluster on port " + clusterPort);
+
+        architect = new Architect()
+            .setReceiver(true)
+            .setDatabaseCredentials(new DatabaseCredentials(
+                new PostgreSQLAuth(dbHost, dbPort, dbName),
+                dbUser, dbPass, 4, 4, "create-drop"
+            ))
+            .setRedisCredentials(new RedisCredentials(
+                redisHost, redisPass, clusterPort, 2000, 10
+            ).withCluster());
+        architect.addEntityClass(Product.class);
+        architect.start();
+
+        repository = new GenericCachedRepository<>(Product.class);
+        ns = RedisManager.get().namespace(Product.class);
+    }
+
+    @AfterAll
+    void teardown() {
+        if (architect != null) {
+            architect.stop();
+        }
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("getResource() - Sans pool unique, chaque type est servi par le noeud de son slot")
+    void testResourceRoutesBySlot() {
+        assertTrue(RedisManager.get().isCluster());
+        assertNull(RedisManager.get().getJedisPool());
+
+        Product p = repository.save(new Product("Clustered", "Cat", 1.0, 1, true));
+        String key = "architect:" + ns + ":" + p.getId();
+        try (Jedis jedis = RedisManager.get().getResource(ns)) {
+            assertTrue(jedis.exists(key));
+            assertTrue(jedis.sismember("architect:~ids:" + ns, String.valueOf(p.getId())));
+        }
+        assertEquals(JedisClusterCRC16.getSlot(ns), JedisClusterCRC16.getSlot(key));
+        try (Jedis jedis = RedisManager.get().getResource()) {
+            assertNotNull(jedis.ping());
+        }
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("save() / query() - Ecritures, index et requetes fonctionnent sur le cluster")
+    void testRepositoryOperations() throws Exception {
+        assertTrue(repository.awaitWarmUp(Duration.ofSeconds(10)));
+        Product kept = repository.save(new Product("Kept", "ClusterCat", 2.0, 1, true));
+        Product removed = repository.save(new Product("Removed", "ClusterCat", 3.0, 1, true));
+
+        assertEquals("Kept", repository.findById(kept.getId()).getName());
+        assertEquals(2, repository.query().where("category", "ClusterCat").count());
+
+        repository.delete(removed);
+        assertNull(repository.findById(removed.getId()));
+        assertEquals(List.of("Kept"),
+            repository.query().where("category", "ClusterCat").findAll().stream().map(Product::getName).toList());
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("increment() - Les scripts de deltas ne touchent que des cles declarees")
+    void testIncrementFlushes() {
+        Product p = repository.save(new Product("ClusterCounter", "Cat", 1.0, 10, true));
+        repository.flushUpdates();
+
+        assertEquals(15, repository.increment(p.getId(), "stock", 5).getStock());
+        repository.flushUpdates();
+        assertFalse(RedisManager.get().hasDeltas(ns));
+        try (var session = SessionManager.get().getSession()) {
+            assertEquals(15, session.get(Product.class, p.getId()).getStock());
+        }
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("rewarm() / enableQueryCache() - Reconciliation et cache de requetes sur le cluster")
+    void testRewarmAndQueryCache() {
+        Product p = repository.save(new Product("ClusterRewarm", "RewarmCat", 1.0, 1, true));
+        repository.flushUpdates();
+        try (var session = SessionManager.get().getSession()) {
+            var tx = session.beginTransaction();
+            session.createMutationQuery("UPDATE " + Product.class.getName() + " SET price = 9 WHERE id = :id")
+                .setParameter("id", p.getId())
+                .executeUpdate();
+            tx.commit();
+        }
+
+        repository.rewarm();
+        assertEquals(9.0, repository.findById(p.getId()).getPrice(), 0.001);
+
+        repository.enableQueryCache(Duration.ofMinutes(1));
+        try {
+            var query = repository.query().whereRaw("category = :category", java.util.Map.of("category", "RewarmCat"));
+            long hits = repository.getQueryCacheHitCount();
+            assertEquals(1, query.findAll().size());
+            assertEquals(1, query.findAll().size());
+            assertEquals(hits + 1, repository.getQueryCacheHitCount());
+        } finally {
+            repository.disableQueryCache();
+        }
+    }
+
+    private boolean isCluster() {
+        try (Jedis jedis = new Jedis(redisHost, clusterPort)) {
+            jedis.auth(redisPass);
+            return jedis.clusterInfo().contains("cluster_state:ok");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -3,13 +3,23 @@ package sh.fyz.architect.test;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.*;
 import sh.fyz.architect.Architect;
+import sh.fyz.architect.cache.BinaryCacheCodec;
+import sh.fyz.architect.cache.CacheBudget;
+import sh.fyz.architect.cache.EntityIndex;
+import sh.fyz.architect.cache.ExpiryPolicy;
 import sh.fyz.architect.cache.RedisCredentials;
+import sh.fyz.architect.cache.RedisManager;
+import sh.fyz.architect.cache.WriteAheadLog;
+import sh.fyz.architect.entities.DatabaseAction;
 import sh.fyz.architect.persistent.DatabaseCredentials;
 import sh.fyz.architect.persistent.sql.provider.PostgreSQLAuth;
 import sh.fyz.architect.repositories.GenericCachedRepository;
 import sh.fyz.architect.repositories.QueryBuilder.Operator;
 import sh.fyz.architect.repositories.QueryBuilder.SortOrder;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
 
@@ -24,6 +34,7 @@ public class GenericCachedRepositoryTest {
 
     private Architect architect;
     private GenericCachedRepository<Product> repository;
+    private String ns;
 
     @BeforeAll
     void setup() {
@@ -50,6 +61,7 @@ public class GenericCachedRepositoryTest {
         architect.start();
 
         repository = new GenericCachedRepository<>(Product.class);
+        ns = RedisManager.get().namespace(Product.class);
     }
 
     @AfterAll
@@ -69,8 +81,15 @@ public class GenericCachedRepositoryTest {
             tx.commit();
         }
 
-        try (var jedis = sh.fyz.architect.cache.RedisManager.get().getJedisPool().getResource()) {
-            var keys = jedis.keys("architect:Product:*");
+        try (var jedis = sh.fyz.architect.cache.RedisManager.get().getResource(ns)) {
+            var keys = jedis.keys("architect:" + ns + ":*");
+            keys.addAll(jedis.keys("architect:~idx:" + ns + ":*"));
+            keys.addAll(jedis.keys("architect:~ids:" + ns));
+            keys.addAll(jedis.keys("architect:~miss:" + ns + ":*"));
+            keys.addAll(jedis.keys("architect:~lru:" + ns));
+            keys.addAll(jedis.keys("architect:~delta*:" + ns + "*"));
+            keys.addAll(jedis.keys("architect:~inflight*:" + ns + "*"));
+            keys.addAll(jedis.keys("architect:~qry:" + ns + ":*"));
             if (!keys.isEmpty()) {
                 jedis.del(keys.toArray(new String[0]));
             }
@@ -142,6 +161,67 @@ public class GenericCachedRepositoryTest {
         assertNull(found);
     }
 
+    @Test
+    @Order(12)
+    @DisplayName("enableNearCache() - Lecture locale puis invalidation au save")
+    void testNearCache() {
+        repository.enableNearCache(100, Duration.ofMinutes(1));
+        Product saved = repository.save(new Product("Near", "Cat", 10.0, 1, true));
+
+        Product first = repository.findById(saved.getId());
+        Product second = repository.findById(saved.getId());
+        assertSame(first, second);
+        assertTrue(repository.getNearCache().getHitCount() >= 1);
+
+        saved.setName("Near2");
+        repository.save(saved);
+        assertEquals("Near2", repository.findById(saved.getId()).getName());
+    }
+
+    @Test
+    @Order(13)
+    @DisplayName("useCodec() - Codec binaire et relecture des entrees JSON existantes")
+    void testBinaryCodec() {
+        Product legacy = repository.save(new Product("Json", "Cat", 12.5, 3, true));
+        repository.useCodec(new BinaryCacheCodec());
+        try {
+            Product saved = repository.save(new Product("Binaire", "Cat", 7.25, 4, false));
+
+            try (var jedis = RedisManager.get().getResource(ns)) {
+                byte[] raw = jedis.get(("architect:" + ns + ":" + saved.getId()).getBytes(StandardCharsets.UTF_8));
+                assertEquals(0xA1, raw[0] & 0xFF);
+            }
+
+            Product found = repository.findById(saved.getId());
+            assertEquals("Binaire", found.getName());
+            assertEquals(7.25, found.getPrice(), 0.001);
+            assertEquals(4, found.getStock());
+            assertFalse(found.isActive());
+            assertNull(found.getDescription());
+
+            assertEquals("Json", repository.findById(legacy.getId()).getName());
+        } finally {
+            repository.useCodec(null);
+        }
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("findAllById() - Cache puis base pour les IDs absents de Redis")
+    void testFindAllById() {
+        Product cached = repository.save(new Product("Cached", "Cat", 1.0, 1, true));
+        Product evicted = repository.save(new Product("Evicted", "Cat", 2.0, 2, true));
+        repository.flushUpdates();
+
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            jedis.del("architect:" + ns + ":" + evicted.getId());
+        }
+
+        List<Product> found = repository.findAllById(List.of(cached.getId(), evicted.getId()));
+        assertEquals(2, found.size());
+        assertNotNull(repository.findById(evicted.getId()));
+    }
+
     // --- DELETE ---
 
     @Test
@@ -185,6 +265,25 @@ public class GenericCachedRepositoryTest {
         assertTrue(all.isEmpty());
     }
 
+    @Test
+    @Order(32)
+    @DisplayName("all() - Registre des ids par type, ids orphelins nettoyes")
+    void testAllUsesTypeRegistry() {
+        Product kept = repository.save(new Product("Kept", "Cat", 10.0, 1, true));
+        Product expired = repository.save(new Product("Expired", "Cat", 20.0, 2, true));
+
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            assertEquals(2, jedis.scard("architect:~ids:" + ns));
+            jedis.del("architect:" + ns + ":" + expired.getId());
+
+            List<Product> all = repository.all();
+            assertEquals(1, all.size());
+            assertEquals(kept.getId(), all.get(0).getId());
+            assertEquals(1, repository.query().count());
+            assertFalse(jedis.sismember("architect:~ids:" + ns, String.valueOf(expired.getId())));
+        }
+    }
+
     // --- QUERY BUILDER (cache-first) ---
 
     @Test
@@ -267,6 +366,47 @@ public class GenericCachedRepositoryTest {
         assertEquals("NoDesc", result.get(0).getName());
     }
 
+    @Test
+    @Order(45)
+    @DisplayName("addIndex() - EQ / IN / IS_NULL servis par l'index Redis")
+    void testQueryWithIndex() {
+        repository.addIndex("category").addIndex("description");
+        Product described = new Product("D1", "Electronics", 10.0, 1, true);
+        described.setDescription("desc");
+        repository.save(described);
+        Product moved = repository.save(new Product("D2", "Electronics", 20.0, 1, true));
+        repository.save(new Product("D3", "Books", 30.0, 1, true));
+
+        moved.setCategory("Games");
+        repository.save(moved);
+
+        assertEquals(1, repository.query().where("category", "Electronics").count());
+        assertEquals(2, repository.query().whereIn("category", List.of("Games", "Books")).findAll().size());
+        assertEquals(2, repository.query().whereNull("description").count());
+        assertEquals(0, repository.query().where("category", "Ghost").count());
+
+        repository.delete(moved);
+        assertEquals(0, repository.query().where("category", "Games").count());
+    }
+
+    @Test
+    @Order(46)
+    @DisplayName("addIndex() - Un index declare a l'execution est maintenu par les autres noeuds")
+    void testIndexDeclaredByAnotherNode() {
+        EntityIndex otherNode = new EntityIndex(Product.class);
+        repository.addIndex("name");
+        Product p = repository.save(new Product("Before", "Cat", 10.0, 1, true));
+        repository.save(new Product("Other", "Cat", 20.0, 1, true));
+
+        p.setName("After");
+        RedisManager.get().saveMember(ns, p.getId(), p, true, otherNode);
+
+        assertTrue(otherNode.isIndexed("name"));
+        assertEquals(List.of(p.getId()), repository.query().where("name", "After").findAll()
+            .stream().map(Product::getId).toList());
+        assertEquals(0, repository.query().where("name", "Before").count());
+    }
+
     // --- ORDERING & PAGINATION (cache) ---
 
     @Test
@@ -322,6 +462,50 @@ public class GenericCachedRepositoryTest {
         assertEquals(1, page3.size());
     }
 
+    @Test
+    @Order(53)
+    @DisplayName("addSortedIndex() - Range et top-N servis par le sorted set")
+    void testQueryWithSortedIndex() {
+        repository.addSortedIndex("price");
+        for (int i = 1; i <= 6; i++) {
+            repository.save(new Product("S" + i, "Cat", i * 10.0, i, true));
+        }
+
+        List<Product> top = repository.query()
+            .orderBy("price", SortOrder.DESC)
+            .limit(2)
+            .findAll();
+        assertEquals(List.of("S6", "S5"), top.stream().map(Product::getName).toList());
+
+        List<Product> range = repository.query()
+            .where("price", Operator.GT, 20.0)
+            .where("price", Operator.LTE, 40.0)
+            .orderBy("price")
+            .findAll();
+        assertEquals(List.of("S3", "S4"), range.stream().map(Product::getName).toList());
+
+        assertEquals(3, repository.query().where("price", Operator.GTE, 40.0).count());
+    }
+
+    @Test
+    @Order(54)
+    @DisplayName("addSortedIndex() - Le top-N suit les ecritures des noeuds qui n'ont pas declare l'index")
+    void testSortedIndexDeclaredByAnotherNode() {
+        EntityIndex otherNode = new EntityIndex(Product.class);
+        repository.addSortedIndex("stock");
+        Product low = repository.save(new Product("Low", "Cat", 10.0, 1, true));
+        repository.save(new Product("Mid", "Cat", 10.0, 5, true));
+
+        low.setStock(9);
+        RedisManager.get().saveMember(ns, low.getId(), low, true, otherNode);
+
+        assertTrue(otherNode.isSorted("stock"));
+        List<Product> top = repository.query().orderBy("stock", SortOrder.DESC).limit(1).findAll();
+        assertEquals(List.of("Low"), top.stream().map(Product::getName).toList());
+        assertEquals(List.of("Mid", "Low"), repository.query().where("stock", Operator.GTE, 5)
+            .orderBy("stock").findAll().stream().map(Product::getName).toList());
+    }
+
     // --- COUNT (cache) ---
 
     @Test
@@ -468,4 +652,666 @@ public class GenericCachedRepositoryTest {
             assertEquals(25, all.size());
         });
     }
+
+    @Test
+    @Order(102)
+    @DisplayName("flushUpdates() - Les save successifs d'une entite sont fusionnes")
+    void testFlushUpdatesCoalescing() {
+        Product p = repository.save(new Product("Coalesce", "Cat", 0.0, 0, true));
+        long before = repository.getCoalescedWriteCount();
+
+        for (int i = 1; i <= 50; i++) {
+            p.setStock(i);
+            repository.save(p);
+        }
+        assertTrue(repository.getCoalescedWriteCount() > before);
+        assertTrue(repository.getPendingWriteCount() <= 1);
+
+        repository.flushUpdates();
+        assertEquals(0, repository.getPendingWriteCount());
+
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            assertEquals(50, session.get(Product.class, p.getId()).getStock());
+        }
+    }
+
+    @Test
+    @Order(103)
+    @DisplayName("flushUpdates() - Flush automatique des que la taille de lot est atteinte")
+    void testFlushPolicyBatchSize() {
+        List<Product> products = new java.util.ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            products.add(repository.save(new Product("Policy" + i, "Cat", i, i, true)));
+        }
+        repository.setFlushPolicy(5, Duration.ofMinutes(10));
+        try {
+            for (int i = 0; i < 5; i++) {
+                products.get(i).setStock(100 + i);
+                repository.save(products.get(i));
+            }
+            Awaitility.await().atMost(AWAIT).until(() -> repository.getPendingWriteCount() == 0);
+
+            products.get(5).setStock(105);
+            repository.save(products.get(5));
+            assertEquals(1, repository.getPendingWriteCount());
+        } finally {
+            repository.setFlushPolicy(500, Duration.ofMillis(200));
+        }
+        Awaitility.await().atMost(AWAIT).until(() -> repository.getPendingWriteCount() == 0);
+    }
+
+    @Test
+    @Order(104)
+    @DisplayName("WriteAheadLog - Les ecritures non commitees sont rejouees a la reouverture")
+    void testWriteAheadLogReplay() throws Exception {
+        Path directory = Files.createTempDirectory("architect-wal");
+        try (WriteAheadLog log = new WriteAheadLog(directory, 4096)) {
+            long committed = 0;
+            long last = 0;
+            for (int i = 0; i < 50; i++) {
+                Product p = new Product("Wal" + i, "Cat", i, i, true);
+                p.setId(9000L + i);
+                DatabaseAction.Type actionType = i % 2 == 0 ? DatabaseAction.Type.SAVE : DatabaseAction.Type.DELETE;
+                last = log.append(log.encode(new DatabaseAction<>(p, actionType)));
+                if (i == 19) {
+                    committed = last;
+                }
+            }
+            log.awaitDurable(last);
+            log.commit(committed);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, 4096)) {
+            List<DatabaseAction<Product>> pending = log.readPending(Product.class);
+            assertEquals(30, pending.size());
+            assertEquals(9020L, pending.get(0).getEntity().getId());
+            assertEquals(DatabaseAction.Type.SAVE, pending.get(0).getType());
+            assertEquals(DatabaseAction.Type.DELETE, pending.get(29).getType());
+        }
+    }
+
+    @Test
+    @Order(105)
+    @DisplayName("save() - File d'ecriture pleine : rejet puis ecriture directe")
+    void testWriteQueueLimit() throws Exception {
+        Product a = repository.save(new Product("LimitA", "Cat", 1.0, 1, true));
+        Product b = repository.save(new Product("LimitB", "Cat", 2.0, 2, true));
+        Product c = repository.save(new Product("LimitC", "Cat", 3.0, 3, true));
+        Product stalled = repository.save(new Product("LimitX", "Cat", 4.0, 4, true));
+
+        // Holds the row of "stalled" so that its flush blocks the flusher, which keeps the
+        // writes below queued.
+        var lockSession = sh.fyz.architect.persistent.SessionManager.get().getSession();
+        var lockTx = lockSession.beginTransaction();
+        lockSession.find(Product.class, stalled.getId(), jakarta.persistence.LockModeType.PESSIMISTIC_WRITE);
+        Thread writer = null;
+        try {
+            repository.setFlushPolicy(1, Duration.ofMinutes(10));
+            stalled.setStock(40);
+            repository.save(stalled);
+            Awaitility.await().atMost(AWAIT).until(() -> repository.getPendingWriteCount() == 0);
+
+            repository.setFlushPolicy(500, Duration.ofMinutes(10));
+            repository.setWriteQueueLimit(2, GenericCachedRepository.OverflowPolicy.REJECT, Duration.ZERO);
+            a.setStock(10);
+            repository.save(a);
+            b.setStock(20);
+            repository.save(b);
+
+            long rejected = repository.getRejectedWriteCount();
+            c.setStock(30);
+            assertThrows(IllegalStateException.class, () -> repository.save(c));
+            assertEquals(rejected + 1, repository.getRejectedWriteCount());
+
+            a.setStock(11);
+            assertDoesNotThrow(() -> repository.save(a));
+
+            repository.setWriteQueueLimit(2, GenericCachedRepository.OverflowPolicy.WRITE_THROUGH, Duration.ZERO);
+            long writeThroughs = repository.getWriteThroughCount();
+            writer = Thread.ofVirtual().start(() -> repository.save(c));
+            Awaitility.await().atMost(AWAIT).until(() -> repository.getWriteThroughCount() == writeThroughs + 1);
+            assertEquals(2, repository.getPendingWriteCount());
+        } finally {
+            lockTx.rollback();
+            lockSession.close();
+            if (writer != null) {
+                writer.join(AWAIT.toMillis());
+            }
+            repository.setWriteQueueLimit(Integer.MAX_VALUE, GenericCachedRepository.OverflowPolicy.BLOCK, Duration.ZERO);
+            repository.setFlushPolicy(500, Duration.ofMillis(200));
+        }
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            assertEquals(30, session.get(Product.class, c.getId()).getStock());
+        }
+        repository.flushUpdates();
+        assertEquals(0, repository.getPendingWriteCount());
+    }
+
+    @Test
+    @Order(106)
+    @DisplayName("flushUpdates() - Une ecriture invalide est isolee en lettre morte")
+    void testFlushIsolatesPoisonAction() {
+        List<Product> products = new java.util.ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            products.add(repository.save(new Product("Poison" + i, "Cat", i, i, true)));
+        }
+        repository.setMaxFlushAttempts(1);
+        try {
+            for (Product p : products) {
+                p.setStock(p.getStock() + 100);
+            }
+            products.get(3).setName("x".repeat(300));
+            for (Product p : products) {
+                repository.save(p);
+            }
+            repository.flushUpdates();
+
+            assertEquals(0, repository.getPendingWriteCount());
+            assertEquals(1, repository.getDeadLetterCount());
+            assertEquals(products.get(3).getId(), repository.getDeadLetters().get(0).action().getEntity().getId());
+            try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+                assertEquals(100, session.get(Product.class, products.get(0).getId()).getStock());
+                assertEquals(107, session.get(Product.class, products.get(7).getId()).getStock());
+                assertEquals(3, session.get(Product.class, products.get(3).getId()).getStock());
+            }
+
+            GenericCachedRepository.DeadLetter<Product> stored = RedisManager.get()
+                .findDeadLetters(RedisManager.get().namespace(Product.class), Product.class, -1).get(0);
+            assertEquals("x".repeat(300), stored.action().getEntity().getName());
+            assertEquals(1, stored.attempts());
+
+            products.get(3).setName("Poison3");
+            repository.save(products.get(3));
+            repository.replayDeadLetters();
+            assertEquals(0, repository.getDeadLetterCount());
+            repository.flushUpdates();
+            try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+                assertEquals(103, session.get(Product.class, products.get(3).getId()).getStock());
+            }
+        } finally {
+            repository.setMaxFlushAttempts(5);
+            repository.clearDeadLetters();
+        }
+    }
+
+    @Test
+    @Order(107)
+    @DisplayName("flushUpdates() - Upserts et suppressions groupees dans le meme lot")
+    void testFlushBulkUpsertAndDelete() {
+        List<Product> products = new java.util.ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            products.add(repository.save(new Product("Bulk" + i, "Cat", i, i, true)));
+        }
+        for (int i = 0; i < 30; i++) {
+            Product p = products.get(i);
+            if (i % 3 == 0) {
+                repository.delete(p);
+            } else {
+                p.setStock(1000 + i);
+                repository.save(p);
+            }
+        }
+        repository.flushUpdates();
+
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            for (int i = 0; i < 30; i++) {
+                Product stored = session.get(Product.class, products.get(i).getId());
+                if (i % 3 == 0) {
+                    assertNull(stored);
+                } else {
+                    assertEquals(1000 + i, stored.getStock());
+                }
+            }
+        }
+    }
+
+    @Test
+    @Order(108)
+    @DisplayName("findById() - Les miss concurrents partagent un seul chargement")
+    void testFindByIdSingleFlight() throws Exception {
+        Product saved = repository.save(new Product("SingleFlight", "Cat", 1.0, 1, true));
+        RedisManager.get().deleteMember(ns, saved.getId());
+        repository.useDistributedLoadLock(Duration.ofSeconds(2));
+
+        int callers = 16;
+        var start = new java.util.concurrent.CountDownLatch(1);
+        var executor = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<java.util.concurrent.Future<Product>> results = new java.util.ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return repository.findById(saved.getId());
+                }));
+            }
+            start.countDown();
+            for (var result : results) {
+                Product found = result.get(5, java.util.concurrent.TimeUnit.SECONDS);
+                assertNotNull(found);
+                assertEquals("SingleFlight", found.getName());
+            }
+        } finally {
+            executor.shutdown();
+            repository.useDistributedLoadLock(null);
+        }
+        assertNotNull(RedisManager.get().find(ns + ":" + saved.getId(), Product.class));
+    }
+
+    @Test
+    @Order(109)
+    @DisplayName("findById() - Les ids inexistants sont memorises puis effaces par save")
+    void testNegativeCache() {
+        repository.enableNegativeCache(Duration.ofSeconds(30));
+        try {
+            long before = repository.getNegativeHitCount();
+            assertNull(repository.findById(987654321L));
+            assertNull(repository.findById(987654321L));
+            assertEquals(before + 1, repository.getNegativeHitCount());
+
+            Product p = repository.save(new Product("Tombstone", "Cat", 1.0, 1, true));
+            repository.delete(p);
+            assertNull(repository.findById(p.getId()));
+            assertEquals(before + 2, repository.getNegativeHitCount());
+
+            repository.save(p);
+            assertNotNull(repository.findById(p.getId()));
+        } finally {
+            repository.enableNegativeCache(null);
+        }
+    }
+
+    @Test
+    @Order(110)
+    @DisplayName("ExpiryPolicy - TTL fixe, glissant ou sans expiration par type")
+    void testExpiryPolicy() {
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            repository.setExpiryPolicy(ExpiryPolicy.fixed(Duration.ofSeconds(60)));
+            Product p = repository.save(new Product("Ttl", "Cat", 1.0, 1, true));
+            String key = "architect:" + ns + ":" + p.getId();
+            long fixedTtl = jedis.ttl(key);
+            assertTrue(fixedTtl > 0 && fixedTtl <= 60);
+
+            repository.setExpiryPolicy(ExpiryPolicy.sliding(Duration.ofSeconds(600)));
+            jedis.expire(key, 10);
+            assertNotNull(repository.findById(p.getId()));
+            assertTrue(jedis.ttl(key) > 10);
+
+            repository.setExpiryPolicy(ExpiryPolicy.none());
+            repository.save(p);
+            assertEquals(-1, jedis.ttl(key));
+        } finally {
+            repository.setExpiryPolicy(null);
+        }
+    }
+
+    @Test
+    @Order(111)
+    @DisplayName("warmUp() - Charge la table par blocs sans ecraser le cache")
+    void testWarmUpInChunks() throws Exception {
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            var tx = session.beginTransaction();
+            for (int i = 0; i < 25; i++) {
+                session.persist(new Product("Warm" + i, "Cat", i, i, true));
+            }
+            tx.commit();
+        }
+        Product cached = repository.query().where("name", "Warm0").findFirst();
+        cached.setPrice(99.0);
+        repository.save(cached);
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            jedis.del("architect:~warm:" + ns);
+        }
+
+        repository.setWarmUpChunkSize(10);
+        try {
+            repository.warmUp();
+        } finally {
+            repository.setWarmUpChunkSize(1000);
+        }
+
+        assertTrue(repository.awaitWarmUp(Duration.ofSeconds(5)));
+        assertEquals(GenericCachedRepository.WarmUpState.READY, repository.getWarmUpState());
+        assertEquals(25, repository.getWarmedEntityCount());
+        assertEquals(25, RedisManager.get().countMembers(ns));
+        assertTrue(RedisManager.get().isWarm(ns));
+        assertEquals(99.0, RedisManager.get().find(ns + ":" + cached.getId(), Product.class).getPrice(), 0.001);
+    }
+
+    @Test
+    @Order(112)
+    @DisplayName("claimNamespace() - Un changement de schema purge l'ancien espace de cles")
+    void testSchemaNamespaceChange() {
+        Product kept = repository.save(new Product("Kept", "Cat", 1.0, 1, true));
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            jedis.set("architect:~schema:Product", "Product@old");
+            jedis.set("architect:Product@old:1", "{}");
+            jedis.sadd("architect:~ids:Product@old", "1");
+
+            RedisManager.get().claimNamespace(Product.class);
+
+            assertEquals(ns, jedis.get("architect:~schema:Product"));
+            Awaitility.await().atMost(AWAIT).untilAsserted(() -> {
+                assertFalse(jedis.exists("architect:Product@old:1"));
+                assertFalse(jedis.exists("architect:~ids:Product@old"));
+            });
+            assertTrue(jedis.exists("architect:" + ns + ":" + kept.getId()));
+        }
+    }
+
+    @Test
+    @Order(113)
+    @DisplayName("CacheBudget - Evince les entrees les moins utilisees au-dela du budget")
+    void testCacheBudgetEviction() throws Exception {
+        repository.setCacheBudget(CacheBudget.entries(5));
+        try {
+            List<Product> saved = new java.util.ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                saved.add(repository.save(new Product("Budget" + i, "Cat", i, i, true)));
+                Thread.sleep(2);
+            }
+            Product hot = saved.get(0);
+            assertNotNull(repository.findById(hot.getId()));
+
+            assertEquals(5, repository.evictColdEntries());
+            assertEquals(5, RedisManager.get().countMembers(ns));
+            assertNotNull(RedisManager.get().find(ns + ":" + hot.getId(), Product.class));
+            assertNull(RedisManager.get().find(ns + ":" + saved.get(1).getId(), Product.class));
+
+            assertEquals(10, repository.query().count());
+            assertEquals(10, repository.all().size());
+            assertNotNull(repository.findById(saved.get(1).getId()));
+        } finally {
+            repository.setCacheBudget(null);
+        }
+    }
+
+    @Test
+    @Order(114)
+    @DisplayName("namespace() - Toutes les cles d'un type partagent le meme slot de cluster")
+    void testNamespaceHashTag() {
+        int slot = redis.clients.jedis.util.JedisClusterCRC16.getSlot("architect:" + ns + ":1");
+        assertEquals(slot, redis.clients.jedis.util.JedisClusterCRC16.getSlot("architect:~ids:" + ns));
+        assertEquals(slot, redis.clients.jedis.util.JedisClusterCRC16.getSlot("architect:~idx:" + ns + ":name:x"));
+        assertEquals(slot, redis.clients.jedis.util.JedisClusterCRC16.getSlot("architect:~miss:" + ns + ":1"));
+
+        Product p = repository.save(new Product("Routed", "Cat", 1.0, 1, true));
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            assertTrue(jedis.exists("architect:" + ns + ":" + p.getId()));
+        }
+    }
+
+    @Test
+    @Order(117)
+    @DisplayName("increment() - Increments atomiques en cache, deltas appliques en base au flush")
+    void testIncrement() {
+        Product p = repository.save(new Product("Counter", "Cat", 1.0, 10, true));
+        repository.flushUpdates();
+
+        assertEquals(13, repository.increment(p.getId(), "stock", 3).getStock());
+        assertEquals(15, repository.increment(p.getId(), "stock", 2).getStock());
+        assertEquals(15, repository.findById(p.getId()).getStock());
+        assertThrows(IllegalArgumentException.class, () -> repository.increment(p.getId(), "name", 1));
+
+        repository.flushUpdates();
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            assertEquals(15, session.get(Product.class, p.getId()).getStock());
+        }
+
+        Product stale = repository.findById(p.getId());
+        repository.increment(p.getId(), "stock", 5);
+        stale.setStock(100);
+        repository.save(stale);
+        repository.flushUpdates();
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            assertEquals(100, session.get(Product.class, p.getId()).getStock());
+        }
+    }
+
+    @Test
+    @Order(118)
+    @DisplayName("enableQueryCache() - Les requetes repetees sont servies depuis Redis et invalidees par les ecritures")
+    void testQueryCache() {
+        repository.save(new Product("Cached1", "QC", 1.0, 1, true));
+        Product cached2 = repository.save(new Product("Cached2", "QC", 2.0, 1, true));
+        repository.flushUpdates();
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            jedis.srem("architect:~qc", ns);
+            Awaitility.await().atMost(AWAIT).until(() -> {
+                String version = jedis.get("architect:~ver:" + ns);
+                cached2.setStock(cached2.getStock() + 1);
+                repository.save(cached2);
+                return java.util.Objects.equals(version, jedis.get("architect:~ver:" + ns));
+            });
+
+            jedis.sadd("architect:~qc", ns);
+            Awaitility.await().atMost(AWAIT).until(() -> {
+                String version = jedis.get("architect:~ver:" + ns);
+                cached2.setStock(cached2.getStock() + 1);
+                repository.save(cached2);
+                return !java.util.Objects.equals(version, jedis.get("architect:~ver:" + ns));
+            });
+        }
+        repository.flushUpdates();
+        repository.enableQueryCache(Duration.ofMinutes(1));
+        try {
+            var query = repository.query()
+                .whereRaw("category = :category", java.util.Map.of("category", "QC"))
+                .orderBy("price", SortOrder.DESC);
+            long hits = repository.getQueryCacheHitCount();
+            assertEquals(List.of("Cached2", "Cached1"), query.findAll().stream().map(Product::getName).toList());
+            assertEquals(List.of("Cached2", "Cached1"), query.findAll().stream().map(Product::getName).toList());
+            assertEquals(hits + 1, repository.getQueryCacheHitCount());
+
+            repository.save(new Product("Cached3", "QC", 3.0, 1, true));
+            repository.flushUpdates();
+            assertEquals(List.of("Cached3", "Cached2", "Cached1"), query.findAll().stream().map(Product::getName).toList());
+            assertEquals(hits + 1, repository.getQueryCacheHitCount());
+        } finally {
+            repository.disableQueryCache();
+        }
+    }
+
+    @Test
+    @Order(119)
+    @DisplayName("setParallelQueryThreshold() - L'evaluation parallele donne le meme resultat que la sequentielle")
+    void testParallelQueryEvaluation() {
+        for (int i = 0; i < 40; i++) {
+            repository.save(new Product("Par" + i, i % 2 == 0 ? "Even" : "Odd", i % 7, i, true));
+        }
+        var query = repository.query()
+            .where("category", "Even")
+            .orderBy("price", SortOrder.DESC)
+            .orderBy("stock")
+            .offset(3)
+            .limit(10);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(2);
+        try {
+            repository.setParallelQueryThreshold(0);
+            List<Long> sequential = query.findAll().stream().map(Product::getId).toList();
+            long sequentialCount = query.count();
+
+            repository.setParallelQueryThreshold(1).setParallelQueryPool(pool);
+            assertEquals(sequential, query.findAll().stream().map(Product::getId).toList());
+            assertEquals(sequentialCount, query.count());
+            assertEquals(10, sequential.size());
+            assertTrue(pool.getPoolSize() > 0);
+        } finally {
+            repository.setParallelQueryThreshold(50_000).setParallelQueryPool(null);
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @Order(120)
+    @DisplayName("ExpiryPolicy - Les requetes d'un type expirant lisent la base")
+    void testExpiringTypeQueriesReadDatabase() throws Exception {
+        assertTrue(repository.awaitWarmUp(AWAIT));
+        List<Product> products = new java.util.ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            products.add(repository.save(new Product("Exp" + i, "Cat", i, i, true)));
+        }
+        repository.flushUpdates();
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            repository.setExpiryPolicy(ExpiryPolicy.fixed(Duration.ofSeconds(60)));
+            String key = "architect:" + ns + ":" + products.get(1).getId();
+            jedis.pexpire(key, 1);
+            Awaitility.await().atMost(AWAIT).until(() -> !jedis.exists(key));
+
+            assertEquals(3, repository.query().count());
+            assertEquals(3, repository.all().size());
+            assertEquals(1, repository.query().where("name", "Exp1").findAll().size());
+        } finally {
+            repository.setExpiryPolicy(null);
+        }
+    }
+
+    @Test
+    @Order(121)
+    @DisplayName("start() - Le repository ne demarre qu'au premier usage, une fois configure")
+    void testLazyStart() throws Exception {
+        GenericCachedRepository<Product> lazy = new GenericCachedRepository<>(Product.class)
+            .setWarmUpChunkSize(10);
+        assertEquals(GenericCachedRepository.WarmUpState.PENDING, lazy.getWarmUpState());
+        assertTrue(lazy.awaitWarmUp(AWAIT));
+        assertEquals(GenericCachedRepository.WarmUpState.READY, lazy.getWarmUpState());
+        assertSame(lazy, lazy.start());
+    }
+
+    @Test
+    @Order(122)
+    @DisplayName("rewarm() - Reconcilie le cache avec la table sans ecraser les ecritures en attente")
+    void testRewarmReconcilesChangedRows() throws Exception {
+        assertTrue(repository.awaitWarmUp(AWAIT));
+        Product changed = repository.save(new Product("Rew0", "Cat", 1.0, 1, true));
+        Product removed = repository.save(new Product("Rew1", "Cat", 1.0, 1, true));
+        Product pending = repository.save(new Product("Rew2", "Cat", 1.0, 1, true));
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            var tx = session.beginTransaction();
+            session.createMutationQuery("UPDATE " + Product.class.getName() + " SET price = 42 WHERE id IN (:ids)")
+                .setParameterList("ids", List.of(changed.getId(), pending.getId()))
+                .executeUpdate();
+            session.createMutationQuery("DELETE FROM " + Product.class.getName() + " WHERE id = :id")
+                .setParameter("id", removed.getId())
+                .executeUpdate();
+            tx.commit();
+        }
+        repository.setFlushPolicy(500, Duration.ofMinutes(10));
+        try {
+            pending.setPrice(7.0);
+            repository.save(pending);
+
+            repository.rewarm();
+
+            assertEquals(42.0, RedisManager.get().find(ns + ":" + changed.getId(), Product.class).getPrice(), 0.001);
+            assertNull(RedisManager.get().find(ns + ":" + removed.getId(), Product.class));
+            assertEquals(7.0, RedisManager.get().find(ns + ":" + pending.getId(), Product.class).getPrice(), 0.001);
+            assertEquals(1, repository.query().where("price", 42.0).count());
+        } finally {
+            repository.setFlushPolicy(500, Duration.ofMillis(200));
+        }
+        try (var jedis = RedisManager.get().getResource(ns)) {
+            long ttl = jedis.ttl("architect:~warm:" + ns);
+            assertTrue(ttl > 0 && ttl <= Duration.ofDays(1).toSeconds());
+        }
+    }
+
+    @Test
+    @Order(123)
+    @DisplayName("increment() - Un delta refuse par la base est isole puis mis en dead deltas")
+    void testFailingDeltasAreIsolated() {
+        Product ok = repository.save(new Product("DeltaOk", "Cat", 1.0, 1, true));
+        Product bad = repository.save(new Product("DeltaBad", "Cat", 1.0, 1, true));
+        repository.flushUpdates();
+        alterProducts("ADD CONSTRAINT stock_cap CHECK (stock < 1000000)");
+        repository.setMaxFlushAttempts(1);
+        try {
+            repository.increment(ok.getId(), "stock", 4);
+            repository.increment(bad.getId(), "stock", 2_000_000);
+            repository.flushUpdates();
+
+            try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+                assertEquals(5, session.get(Product.class, ok.getId()).getStock());
+                assertEquals(1, session.get(Product.class, bad.getId()).getStock());
+            }
+            List<GenericCachedRepository.DeadDeltas> dead = repository.getDeadDeltas();
+            assertEquals(1, dead.size());
+            assertEquals(String.valueOf(bad.getId()), dead.get(0).id());
+            assertEquals(2_000_000, Double.parseDouble(dead.get(0).deltas().get("stock")), 0.001);
+            assertFalse(RedisManager.get().hasDeltas(ns));
+
+            alterProducts("DROP CONSTRAINT stock_cap");
+            repository.replayDeadDeltas();
+            assertTrue(repository.getDeadDeltas().isEmpty());
+            repository.flushUpdates();
+            try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+                assertEquals(2_000_001, session.get(Product.class, bad.getId()).getStock());
+            }
+        } finally {
+            repository.setMaxFlushAttempts(5);
+            repository.clearDeadDeltas();
+            alterProducts("DROP CONSTRAINT IF EXISTS stock_cap");
+        }
+    }
+
+    @Test
+    @Order(124)
+    @DisplayName("findById() - Une ecriture en attente prime sur la ligne encore en base")
+    void testPendingWriteShadowsDatabaseRow() {
+        Product removed = repository.save(new Product("Shadowed", "Cat", 1.0, 1, true));
+        Product changed = repository.save(new Product("Before", "Cat", 1.0, 1, true));
+        repository.flushUpdates();
+        repository.setFlushPolicy(500, Duration.ofMinutes(10));
+        try {
+            repository.delete(removed);
+            assertNull(repository.findById(removed.getId()));
+            assertNull(RedisManager.get().find(ns + ":" + removed.getId(), Product.class));
+
+            changed.setName("After");
+            repository.save(changed);
+            try (var jedis = RedisManager.get().getResource(ns)) {
+                jedis.del("architect:" + ns + ":" + changed.getId());
+            }
+            assertEquals("After", repository.findById(changed.getId()).getName());
+            assertEquals(List.of("After"), repository.findAllById(List.of(removed.getId(), changed.getId()))
+                .stream().map(Product::getName).toList());
+        } finally {
+            repository.setFlushPolicy(500, Duration.ofMillis(200));
+        }
+    }
+
+    @Test
+    @Order(125)
+    @DisplayName("query().delete() - Les sauvegardes en attente des lignes supprimees ne sont pas rejouees")
+    void testBulkDeleteReplacesPendingSaves() {
+        Product flushed = repository.save(new Product("BulkFlushed", "Other", 1.0, 1, true));
+        repository.flushUpdates();
+        repository.setFlushPolicy(500, Duration.ofMinutes(10));
+        try {
+            Product pending = repository.save(new Product("BulkPending", "BulkDeleteCat", 1.0, 1, true));
+            flushed.setCategory("BulkDeleteCat");
+            repository.save(flushed);
+
+            repository.query().where("category", "BulkDeleteCat").delete();
+            assertNull(repository.findById(pending.getId()));
+            assertNull(repository.findById(flushed.getId()));
+            assertTrue(repository.findAllById(List.of(pending.getId(), flushed.getId())).isEmpty());
+
+            repository.flushUpdates();
+            assertEquals(0, repository.getPendingWriteCount());
+            try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+                assertNull(session.get(Product.class, pending.getId()));
+                assertNull(session.get(Product.class, flushed.getId()));
+            }
+        } finally {
+            repository.setFlushPolicy(500, Duration.ofMillis(200));
+        }
+    }
+
+    private static void alterProducts(String change) {
+        try (var session = sh.fyz.architect.persistent.SessionManager.get().getSession()) {
+            var tx = session.beginTransaction();
+            session.createNativeMutationQuery("ALTER TABLE test_products " + change).executeUpdate();
+            tx.commit();
+        }
+    }
 }
@@ -140,6 +140,20 @@ public class GenericRepositoryTest {
         assertNull(repository.findById(id));
     }
 
+    @Test
+    @Order(8)
+    @DisplayName("findAllById() - Charge plusieurs IDs en une requete")
+    void testFindAllById() {
+        Product a = repository.save(new Product("A", "Cat", 1.0, 1, true));
+        Product b = repository.save(new Product("B", "Cat", 2.0, 2, true));
+        repository.save(new Product("C", "Cat", 3.0, 3, true));
+
+        List<Product> found = repository.findAllById(List.of(a.getId(), b.getId(), 999999L));
+        assertEquals(2, found.size());
+        assertTrue(found.stream().anyMatch(p -> p.getId().equals(a.getId())));
+        assertTrue(found.stream().anyMatch(p -> p.getId().equals(b.getId())));
+    }
+
     @Test
     @Order(10)
     @DisplayName("query().where(EQ) - findFirst()")
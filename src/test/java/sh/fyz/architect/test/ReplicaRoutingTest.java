@@ -0,0 +1,134 @@
+package sh.fyz.architect.test;
+
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.*;
+import redis.clients.jedis.Jedis;
+import sh.fyz.architect.Architect;
+import sh.fyz.architect.cache.RedisCredentials;
+import sh.fyz.architect.cache.RedisManager;
+import sh.fyz.architect.persistent.DatabaseCredentials;
+import sh.fyz.architect.persistent.sql.provider.PostgreSQLAuth;
+import sh.fyz.architect.repositories.GenericCachedRepository;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Needs a Redis replica of the test server, e.g.
+ * {@code redis-server --port 6381 --replicaof localhost 6380 --masterauth architect --requirepass architect};
+ * skipped when none answers on {@code REDIS_REPLICA_PORT}.
+ */
+@DisplayName("Replicas - Routage des lectures selon le retard")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ReplicaRoutingTest {
+
+    private static final Duration AWAIT = Duration.ofSeconds(10);
+    private static final Duration TOLERANCE = Duration.ofMillis(500);
+
+    private Architect architect;
+    private GenericCachedRepository<Product> repository;
+    private String redisHost;
+    private int redisPort;
+    private int replicaPort;
+    private String redisPass;
+
+    @BeforeAll
+    void setup() {
+        String dbHost = System.getenv().getOrDefault("DB_HOST", "localhost");
+        int dbPort = Integer.parseInt(System.getenv().getOrDefault("DB_PORT", "5440"));
+        String dbName = System.getenv().getOrDefault("DB_NAME", "architect_test");
+        String dbUser = System.getenv().getOrDefault("DB_USER", "architect");
+        String dbPass = System.getenv().getOrDefault("DB_PASS", "architect");
+
+        redisHost = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+        redisPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6380"));
+        replicaPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_REPLICA_PORT", "6381"));
+        redisPass = System.getenv().getOrDefault("REDIS_PASS", "architect");
+        Assumptions.assumeTrue(isReplica(), "No Redis replica on port " + replicaPort);
+
+        architect = new Architect()
+            .setReceiver(true)
+            .setDatabaseCredentials(new DatabaseCredentials(
+                new PostgreSQLAuth(dbHost, dbPort, dbName),
+                dbUser, dbPass, 4, 4, "create-drop"
+            ))
+            .setRedisCredentials(new RedisCredentials(
+                redisHost, redisPass, redisPort, 2000, 10
+            ).withReplicas(redisHost + ":" + replicaPort));
+        architect.addEntityClass(Product.class);
+        architect.start();
+
+        repository = new GenericCachedRepository<>(Product.class).readFromReplicas(TOLERANCE);
+    }
+
+    @AfterAll
+    void teardown() {
+        if (architect != null) {
+            architect.stop();
+        }
+    }
+
+    @AfterEach
+    void reattachReplica() {
+        try (Jedis replica = replica()) {
+            replica.replicaof(redisHost, redisPort);
+        }
+        Awaitility.await().atMost(AWAIT).until(this::replicaCaughtUp);
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("readFromReplicas() - Un replica dans la tolerance sert la lecture")
+    void testReadWithinToleranceUsesReplica() {
+        Product p = repository.save(new Product("Replica", "Cat", 1.0, 1, true));
+        Awaitility.await().atMost(AWAIT).until(this::replicaCaughtUp);
+
+        long before = RedisManager.get().getReplicaReadCount();
+        Product found = repository.findById(p.getId());
+        assertEquals("Replica", found.getName());
+        assertEquals(before + 1, RedisManager.get().getReplicaReadCount());
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("readFromReplicas() - Apres une ecriture, un replica trop en retard laisse lire le primaire")
+    void testReadBeyondToleranceUsesPrimary() {
+        Product p = repository.save(new Product("Before", "Cat", 1.0, 1, true));
+        Awaitility.await().atMost(AWAIT).until(this::replicaCaughtUp);
+        try (Jedis replica = replica()) {
+            replica.replicaofNoOne();
+        }
+        Awaitility.await().atMost(AWAIT).until(() -> {
+            Duration staleness = RedisManager.get().getReplicaStaleness().get(0);
+            return staleness == null || staleness.compareTo(TOLERANCE) > 0;
+        });
+
+        p.setName("After");
+        repository.save(p);
+        long before = RedisManager.get().getReplicaReadCount();
+        Product found = repository.findById(p.getId());
+        assertEquals("After", found.getName());
+        assertEquals(before, RedisManager.get().getReplicaReadCount());
+    }
+
+    private boolean replicaCaughtUp() {
+        Duration staleness = RedisManager.get().getReplicaStaleness().get(0);
+        return staleness != null && staleness.compareTo(TOLERANCE) <= 0;
+    }
+
+    private boolean isReplica() {
+        try (Jedis replica = replica()) {
+            return replica.info("replication").contains("role:slave");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Jedis replica() {
+        Jedis jedis = new Jedis(redisHost, replicaPort);
+        jedis.auth(redisPass);
+        return jedis;
+    }
+}